@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.opencv.core.Mat;
+import org.opencv.video.BackgroundSubtractorMOG2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of BackgroundSubtractorMOG2.apply with the parameters used by
+ * ForegroundExtractor, on a moving block.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackgroundSubtractionBenchmark {
+    
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+    
+    @Param({"1", "3"})
+    public int channels;
+    
+    private Mat[] frames;
+    private Mat fgMask;
+    private BackgroundSubtractorMOG2 bsmog;
+    private int index;
+    
+    @Setup
+    public void setup() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        frames = SyntheticFrames.createFrames(size[0], size[1], channels, 30);
+        fgMask = new Mat();
+        
+        bsmog = new BackgroundSubtractorMOG2(100, 75f, false);
+        for (Mat frame : frames) {
+            bsmog.apply(frame, fgMask);
+        }
+    }
+    
+    @Benchmark
+    public Mat apply() {
+        bsmog.apply(frames[index], fgMask);
+        index = (index + 1) % frames.length;
+        return fgMask;
+    }
+    
+    @TearDown
+    public void tearDown() {
+        SyntheticFrames.release(frames);
+        fgMask.release();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.util.CannyDetector;
+import java.util.concurrent.TimeUnit;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of CannyDetector.detect. The detector converts from RGB, so only 3
+ * channel frames are used.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CannyDetectorBenchmark {
+    
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+    
+    private Mat src;
+    private Mat dst;
+    private CannyDetector cannyDetector;
+    
+    @Setup
+    public void setup() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        src = SyntheticFrames.createFrames(size[0], size[1], 3, 1)[0];
+        dst = new Mat();
+        cannyDetector = new CannyDetector();
+    }
+    
+    @Benchmark
+    public Mat detect() {
+        cannyDetector.detect(src, dst);
+        return dst;
+    }
+    
+    @TearDown
+    public void tearDown() {
+        SyntheticFrames.release(src, dst);
+    }
+}
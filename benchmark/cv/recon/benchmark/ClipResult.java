@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Result of one clip of MacroBenchmark, as a row of tab-separated values.
+ *
+ * @author Burhanuddin
+ */
+class ClipResult {
+    
+    static final String HEADER = "clip\texpected\tcount\tframes\tfps"
+            + "\tp99_processing_ms\tp99_end_to_end_ms\tpeak_pool_bytes\tpeak_rss_bytes";
+    
+    final String clip;
+    final long expected;
+    final long count;
+    final long frames;
+    final double fps;
+    final double p99Processing;
+    final double p99EndToEnd;
+    final long peakPoolBytes;
+    final long peakRssBytes;
+    
+    /**
+     * Construct result.
+     * @param clip Clip name, relative to the clip folder
+     * @param expected Expected repetition count
+     * @param count Repetition count
+     * @param frames Processed frames
+     * @param fps Processed frames per second over the whole clip
+     * @param p99Processing 99th percentile of processing latency in ms
+     * @param p99EndToEnd 99th percentile of capture to render latency in ms
+     * @param peakPoolBytes Peak native bytes of the shared MatPool
+     * @param peakRssBytes Peak resident memory of the process, -1 if unknown
+     */
+    ClipResult(String clip, long expected, long count, long frames, double fps,
+            double p99Processing, double p99EndToEnd, long peakPoolBytes, long peakRssBytes) {
+        this.clip = clip;
+        this.expected = expected;
+        this.count = count;
+        this.frames = frames;
+        this.fps = fps;
+        this.p99Processing = p99Processing;
+        this.p99EndToEnd = p99EndToEnd;
+        this.peakPoolBytes = peakPoolBytes;
+        this.peakRssBytes = peakRssBytes;
+    }
+    
+    /**
+     * @return Absolute difference between count and expected count
+     */
+    long getError() {
+        return Math.abs(count - expected);
+    }
+    
+    /**
+     * @return Row of tab-separated values in HEADER order
+     */
+    String toRow() {
+        return String.format(Locale.ROOT, "%s\t%d\t%d\t%d\t%.2f\t%.3f\t%.3f\t%d\t%d",
+                clip, expected, count, frames, fps, p99Processing, p99EndToEnd, peakPoolBytes, peakRssBytes);
+    }
+    
+    /**
+     * Parse a row written by toRow.
+     * @param row Row of tab-separated values
+     * @return Result
+     * @throws IllegalArgumentException If the row is malformed
+     */
+    static ClipResult parse(String row) {
+        String[] values = row.split("\t");
+        if (values.length != 9) {
+            throw new IllegalArgumentException("Expected 9 columns: " + row);
+        }
+        return new ClipResult(values[0], Long.parseLong(values[1]), Long.parseLong(values[2]),
+                Long.parseLong(values[3]), Double.parseDouble(values[4]), Double.parseDouble(values[5]),
+                Double.parseDouble(values[6]), Long.parseLong(values[7]), Long.parseLong(values[8]));
+    }
+    
+    /**
+     * Read results written by write.
+     * @param file Result file
+     * @return Results by clip, in file order
+     * @throws IOException If the file cannot be read
+     */
+    static Map<String, ClipResult> read(Path file) throws IOException {
+        Map<String, ClipResult> results = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.equals(HEADER)) {
+                continue;
+            }
+            ClipResult result = parse(line);
+            results.put(result.clip, result);
+        }
+        return results;
+    }
+    
+    /**
+     * Write results with a header line.
+     * @param file Result file
+     * @param results Results
+     * @throws IOException If the file cannot be written
+     */
+    static void write(Path file, List<ClipResult> results) throws IOException {
+        StringBuilder builder = new StringBuilder(HEADER).append('\n');
+        for (ClipResult result : results) {
+            builder.append(result.toRow()).append('\n');
+        }
+        Files.write(file, builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.util.MatFXUtils;
+import java.util.concurrent.TimeUnit;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the stages working on the full frame: masked copy into the output
+ * and reading pixels out for display.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+    
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+    
+    @Param({"1", "3"})
+    public int channels;
+    
+    private Mat src;
+    private Mat fgMask;
+    private Mat output;
+    private Mat converted;
+    private byte[] buffer;
+    
+    @Setup
+    public void setup() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        src = SyntheticFrames.createFrames(size[0], size[1], channels, 1)[0];
+        fgMask = SyntheticFrames.createMask(size[0], size[1]);
+        output = new Mat();
+        converted = new Mat();
+        buffer = new byte[MatFXUtils.bufferSize(src)];
+    }
+    
+    @Benchmark
+    public Mat maskedCopy() {
+        src.copyTo(output, fgMask);
+        return output;
+    }
+    
+    /**
+     * Part of MatFXUtils.writePixels before the PixelWriter: BGRA expansion
+     * and the JNI copy into a Java array. Runs without the JavaFX toolkit.
+     */
+    @Benchmark
+    public byte[] readPixels() {
+        if (channels > 1) {
+            Imgproc.cvtColor(src, converted, Imgproc.COLOR_BGR2BGRA);
+            converted.get(0, 0, buffer);
+        } else {
+            src.get(0, 0, buffer);
+        }
+        return buffer;
+    }
+    
+    @TearDown
+    public void tearDown() {
+        SyntheticFrames.release(src, fgMask, output, converted);
+    }
+}
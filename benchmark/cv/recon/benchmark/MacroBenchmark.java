@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.engine.BackpressurePolicy;
+import cv.recon.engine.FrameSource;
+import cv.recon.engine.FrameSources;
+import cv.recon.engine.Pipeline;
+import cv.recon.engine.Stage;
+import cv.recon.engine.StageStatistics;
+import cv.recon.util.MatPool;
+import cv.recon.util.NativeLoader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Run labeled clips through the full pipeline and report count accuracy,
+ * sustained frames per second, p99 frame latency and peak memory per clip,
+ * optionally gated against a stored baseline.
+ * <p/>
+ * Usage: <code>ant macro-benchmark -Dmacro.args="[--baseline file]
+ * [--tolerance t] dir"</code> or <code>MacroBenchmark [--output file]
+ * [--baseline file] [--tolerance t] [--timeout seconds] dir</code>
+ * <p/>
+ * Every file <code>name.count</code> in the folder labels the clip
+ * <code>name</code> next to it, a video file or a recording, with its
+ * expected repetition count. Each clip runs in a JVM of its own, so peak
+ * memory and warm-up are those of a fresh start, through a Pipeline set up
+ * like the GUI with region extraction and parallel morphology, without
+ * dropping frames. Results are written as tab-separated values, see
+ * ClipResult, and can be kept as the baseline of later runs.
+ * <p/>
+ * Against a baseline, a clip regresses when its count is further off, its
+ * frames per second drop, or its p99 processing latency or peak memory grow,
+ * by more than the tolerance, 10% by default. Exits with status 2 if any
+ * clip regresses and 1 if any clip fails to run or does not finish within
+ * the timeout, 10 minutes by default.
+ *
+ * @author Burhanuddin
+ */
+public class MacroBenchmark {
+    
+    public static final String SIDECAR_EXTENSION = ".count";
+    public static final double DEFAULT_TOLERANCE = 0.1;
+    public static final long DEFAULT_TIMEOUT = 600;
+    
+    private static final String RUN_OPTION = "--run";
+    private static final String RESULT_PREFIX = "RESULT\t";
+    private static final double NANOS_PER_MILLI = 1e6;
+    
+    /**
+     * @param args Options followed by the clip folder
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 4 && args[0].equals(RUN_OPTION)) {
+            runClip(args[1], args[2], Long.parseLong(args[3]));
+            return;
+        }
+        
+        Path output = Paths.get("macro-benchmark.tsv");
+        Path baselineFile = null;
+        double tolerance = DEFAULT_TOLERANCE;
+        long timeout = DEFAULT_TIMEOUT;
+        Path dir = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--output") && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else if (args[i].equals("--baseline") && i + 1 < args.length) {
+                baselineFile = Paths.get(args[++i]);
+            } else if (args[i].equals("--tolerance") && i + 1 < args.length) {
+                tolerance = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--timeout") && i + 1 < args.length) {
+                timeout = Long.parseLong(args[++i]);
+            } else {
+                dir = Paths.get(args[i]);
+            }
+        }
+        
+        if (dir == null || !Files.isDirectory(dir)) {
+            System.err.println("Usage: MacroBenchmark [--output file] [--baseline file] [--tolerance t] [--timeout seconds] dir");
+            System.exit(1);
+        }
+        
+        List<ClipResult> results = new ArrayList<>();
+        int failures = 0;
+        for (Path sidecar : findSidecars(dir)) {
+            String name = sidecar.getFileName().toString();
+            String clip = name.substring(0, name.length() - SIDECAR_EXTENSION.length());
+            long expected = Long.parseLong(new String(Files.readAllBytes(sidecar), StandardCharsets.UTF_8).trim());
+            
+            ClipResult result = fork(clip, dir.resolve(clip), expected, timeout);
+            if (result == null) {
+                System.out.println(clip + ": failed");
+                failures++;
+                continue;
+            }
+            results.add(result);
+            System.out.println(String.format(Locale.ROOT,
+                    "%s: count=%d expected=%d fps=%.1f p99=%.2fms end-to-end p99=%.2fms pool=%dMB rss=%dMB",
+                    clip, result.count, result.expected, result.fps, result.p99Processing,
+                    result.p99EndToEnd, result.peakPoolBytes >> 20, result.peakRssBytes >> 20));
+        }
+        
+        ClipResult.write(output, results);
+        printAccuracy(results);
+        System.out.println("Results written to " + output);
+        
+        int regressions = 0;
+        if (baselineFile != null) {
+            regressions = compare(results, ClipResult.read(baselineFile), tolerance);
+        }
+        
+        System.exit(failures > 0 ? 1 : regressions > 0 ? 2 : 0);
+    }
+    
+    /**
+     * Find the sidecar files of a folder, sorted by name.
+     * @param dir Clip folder
+     * @return Sidecar files
+     * @throws IOException If the folder cannot be listed
+     */
+    private static List<Path> findSidecars(Path dir) throws IOException {
+        List<Path> sidecars = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SIDECAR_EXTENSION)) {
+            for (Path sidecar : stream) {
+                sidecars.add(sidecar);
+            }
+        }
+        sidecars.sort(null);
+        return sidecars;
+    }
+    
+    /**
+     * Run a clip in a new JVM with the class path and library path of this
+     * one.
+     * @param clip Clip name
+     * @param path Clip path
+     * @param expected Expected repetition count
+     * @param timeout Seconds to wait for the clip before killing the JVM
+     * @return Result, null if the run failed or timed out
+     * @throws IOException If the JVM cannot be started
+     * @throws InterruptedException If interrupted while waiting for it
+     */
+    private static ClipResult fork(String clip, Path path, long expected, long timeout)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String libraryPath = System.getProperty("java.library.path");
+        if (libraryPath != null) {
+            command.add("-Djava.library.path=" + libraryPath);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MacroBenchmark.class.getName());
+        command.add(RUN_OPTION);
+        command.add(clip);
+        command.add(path.toString());
+        command.add(Long.toString(expected));
+        
+        // output goes to a file, so waiting is not tied to reading it
+        Path output = Files.createTempFile("macro-benchmark", ".out");
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .redirectOutput(output.toFile())
+                    .start();
+            if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+                System.err.println(clip + ": timed out after " + timeout + " s");
+                process.destroyForcibly().waitFor();
+                return null;
+            }
+            if (process.exitValue() != 0) {
+                return null;
+            }
+            
+            for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    return ClipResult.parse(line.substring(RESULT_PREFIX.length()));
+                }
+            }
+            return null;
+        } finally {
+            Files.delete(output);
+        }
+    }
+    
+    /**
+     * Run a clip through a Pipeline in this JVM and print its result.
+     * @param clip Clip name
+     * @param path Clip path
+     * @param expected Expected repetition count
+     * @throws InterruptedException If interrupted while waiting for the clip
+     */
+    private static void runClip(String clip, String path, long expected) throws InterruptedException {
+        NativeLoader.load();
+        
+        FrameSource source = FrameSources.open(path);
+        AtomicReference<Pipeline> pipelineRef = new AtomicReference<>();
+        AtomicLong count = new AtomicLong();
+        Pipeline pipeline = new Pipeline(source,
+                frame -> {
+                    // stands in for the render stage of the GUI
+                    Pipeline running = pipelineRef.get();
+                    running.getStatistics().record(Stage.END_TO_END,
+                            System.nanoTime() - frame.getCaptureTime());
+                    running.release(frame);
+                },
+                (timestamp, value, midRange, repetitions, repetition) -> count.set(repetitions));
+        pipelineRef.set(pipeline);
+        pipeline.setBackpressure(BackpressurePolicy.BLOCK, 1);
+        pipeline.setRegionExtraction(true);
+        pipeline.setParallelMorphology(true);
+        pipeline.startBackgroundSubtraction();
+        
+        long start = System.nanoTime();
+        pipeline.start();
+        pipeline.awaitCompletion();
+        long elapsed = System.nanoTime() - start;
+        
+        StageStatistics statistics = pipeline.getStatistics();
+        long frames = pipeline.getProcessedCount();
+        double fps = frames * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        double p99Processing = statistics.get(Stage.PROCESSING).getPercentile(99) / NANOS_PER_MILLI;
+        double p99EndToEnd = statistics.get(Stage.END_TO_END).getPercentile(99) / NANOS_PER_MILLI;
+        pipeline.stop();
+        
+        ClipResult result = new ClipResult(clip, expected, count.get(), frames, fps, p99Processing,
+                p99EndToEnd, MatPool.getShared().getPeakNativeBytes(), readPeakRss());
+        System.out.println(RESULT_PREFIX + result.toRow());
+    }
+    
+    /**
+     * Read peak resident memory of this process, VmHWM on Linux.
+     * @return Peak resident bytes, -1 if unknown
+     */
+    private static long readPeakRss() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmHWM:")) {
+                    String[] fields = line.trim().split("\\s+");
+                    return Long.parseLong(fields[1]) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            // unknown
+        }
+        return -1;
+    }
+    
+    /**
+     * Print how many clips were counted exactly and the mean count error.
+     * @param results Results
+     */
+    private static void printAccuracy(List<ClipResult> results) {
+        int exact = 0;
+        long totalError = 0;
+        for (ClipResult result : results) {
+            if (result.getError() == 0) {
+                exact++;
+            }
+            totalError += result.getError();
+        }
+        System.out.println(String.format(Locale.ROOT, "accuracy: %d/%d clips exact, mean error %.2f",
+                exact, results.size(), results.isEmpty() ? 0 : (double) totalError / results.size()));
+    }
+    
+    /**
+     * Compare results with a baseline and print every regression.
+     * @param results Results of this run
+     * @param baseline Baseline results by clip
+     * @param tolerance Allowed relative change of throughput, latency and
+     * memory
+     * @return Number of regressions
+     */
+    private static int compare(List<ClipResult> results, Map<String, ClipResult> baseline, double tolerance) {
+        int regressions = 0;
+        for (ClipResult result : results) {
+            ClipResult base = baseline.get(result.clip);
+            if (base == null) {
+                System.out.println(result.clip + ": not in baseline");
+                continue;
+            }
+            
+            List<String> reasons = new ArrayList<>();
+            if (result.getError() > base.getError()) {
+                reasons.add("count " + result.count + " (baseline " + base.count + ")");
+            }
+            if (result.fps < base.fps * (1 - tolerance)) {
+                reasons.add(String.format(Locale.ROOT, "fps %.1f (baseline %.1f)", result.fps, base.fps));
+            }
+            if (result.p99Processing > base.p99Processing * (1 + tolerance)) {
+                reasons.add(String.format(Locale.ROOT, "p99 %.2fms (baseline %.2fms)",
+                        result.p99Processing, base.p99Processing));
+            }
+            if (result.peakPoolBytes > base.peakPoolBytes * (1 + tolerance)) {
+                reasons.add("pool " + result.peakPoolBytes + " bytes (baseline " + base.peakPoolBytes + ")");
+            }
+            if (base.peakRssBytes > 0 && result.peakRssBytes > base.peakRssBytes * (1 + tolerance)) {
+                reasons.add("rss " + result.peakRssBytes + " bytes (baseline " + base.peakRssBytes + ")");
+            }
+            
+            if (!reasons.isEmpty()) {
+                System.out.println(result.clip + ": regressed " + String.join(", ", reasons));
+                regressions++;
+            }
+        }
+        System.out.println("regressions: " + regressions);
+        return regressions;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the stages working on the single channel foreground mask: erode and
+ * dilate with the 10x10 elliptical kernel, and countNonZero.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaskBenchmark {
+    
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+    
+    private Mat mask;
+    private Mat fgMask;
+    private Mat kernel;
+    
+    @Setup
+    public void setup() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        mask = SyntheticFrames.createMask(size[0], size[1]);
+        fgMask = mask.clone();
+        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(10, 10));
+    }
+    
+    @Benchmark
+    public Mat erodeDilate() {
+        Imgproc.erode(mask, fgMask, kernel);
+        Imgproc.dilate(fgMask, fgMask, kernel);
+        return fgMask;
+    }
+    
+    @Benchmark
+    public int countNonZero() {
+        return Core.countNonZero(mask);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        SyntheticFrames.release(mask, fgMask, kernel);
+    }
+}
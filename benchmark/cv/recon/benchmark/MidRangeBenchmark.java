@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.util.Math;
+import cv.recon.util.SlidingWindowStatistics;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.chart.XYChart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per sample of keeping the mid range of a window up to date, scanning
+ * chart data with Math.midRange against SlidingWindowStatistics.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MidRangeBenchmark {
+    
+    @Param({"50", "500", "5000"})
+    public int window;
+    
+    private ObservableList<XYChart.Data<Number, Number>> list;
+    private SlidingWindowStatistics statistics;
+    private double[] samples;
+    private int index;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        samples = new double[4096];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(100000);
+        }
+        
+        list = FXCollections.observableArrayList();
+        statistics = new SlidingWindowStatistics(window);
+        for (int i = 0; i < window; i++) {
+            list.add(new XYChart.Data<>(i, samples[i % samples.length]));
+            statistics.add(i, samples[i % samples.length]);
+        }
+    }
+    
+    /**
+     * What ChartController did before: add to list, remove the oldest and
+     * scan the list.
+     */
+    @Benchmark
+    public double listMidRange() {
+        double value = samples[index++ & (samples.length - 1)];
+        list.add(new XYChart.Data<>(index, value));
+        list.remove(0);
+        return Math.midRange(list);
+    }
+    
+    @Benchmark
+    public double slidingMidRange() {
+        double value = samples[index++ & (samples.length - 1)];
+        statistics.add(index, value);
+        return statistics.getMidRange();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        list.clear();
+    }
+}
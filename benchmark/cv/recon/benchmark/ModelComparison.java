@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.engine.BackgroundModelType;
+import cv.recon.engine.BatchEngine;
+import cv.recon.engine.BatchResult;
+import cv.recon.engine.FrameSource;
+import cv.recon.engine.FrameSources;
+import org.opencv.core.Core;
+
+/**
+ * Run clips with every background model and compare repetition count and
+ * throughput with MOG2.
+ * <p/>
+ * Usage: <code>ant model-comparison -Dclips="a.avi b.avi"</code> or
+ * <code>ModelComparison clip...</code>
+ * <p/>
+ * Exits with status 2 if any model counts differently from MOG2 on any clip.
+ *
+ * @author Burhanuddin
+ */
+public class ModelComparison {
+    
+    /**
+     * @param args Clips, video files or recordings
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: ModelComparison clip...");
+            System.exit(1);
+        }
+        
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        
+        int mismatches = 0;
+        for (String clip : args) {
+            long reference = -1;
+            double referenceFps = 0;
+            
+            for (BackgroundModelType modelType : BackgroundModelType.values()) {
+                BatchResult result = run(clip, modelType);
+                if (reference < 0) {
+                    reference = result.getCount();
+                    referenceFps = result.getFramesPerSecond();
+                }
+                
+                boolean same = result.getCount() == reference;
+                if (!same) {
+                    mismatches++;
+                }
+                System.out.println(String.format("%s model=%s count=%d%s fps=%.1f latency=%.2fms speedup=%.2fx",
+                        clip, modelType, result.getCount(), same ? "" : " (expected " + reference + ")",
+                        result.getFramesPerSecond(), result.getMeanLatency(),
+                        result.getFramesPerSecond() / referenceFps));
+            }
+        }
+        
+        System.exit(mismatches == 0 ? 0 : 2);
+    }
+    
+    /**
+     * Count repetition of a clip with one background model.
+     * @param clip Video file or recording
+     * @param modelType Kind of background model
+     * @return Result of the run
+     */
+    private static BatchResult run(String clip, BackgroundModelType modelType) {
+        FrameSource source = FrameSources.open(clip);
+        BatchEngine engine = new BatchEngine();
+        engine.setBackgroundModel(modelType);
+        try {
+            return engine.run(source);
+        } finally {
+            source.close();
+            engine.release();
+        }
+    }
+}
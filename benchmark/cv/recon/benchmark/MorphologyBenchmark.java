@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.util.ParallelMorphology;
+import java.util.concurrent.TimeUnit;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential erode and dilate against ParallelMorphology.open on the common
+ * pool. Setup checks that both give the same mask.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MorphologyBenchmark {
+    
+    @Param({"640x480", "1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+    
+    private Mat mask;
+    private Mat fgMask;
+    private Mat kernel;
+    private ParallelMorphology morphology;
+    
+    @Setup
+    public void setup() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        mask = SyntheticFrames.createMask(size[0], size[1]);
+        fgMask = new Mat();
+        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(10, 10));
+        morphology = new ParallelMorphology();
+        
+        Mat expected = new Mat();
+        Imgproc.erode(mask, expected, kernel);
+        Imgproc.dilate(expected, expected, kernel);
+        morphology.open(mask, fgMask, kernel);
+        
+        Mat difference = new Mat();
+        Core.absdiff(expected, fgMask, difference);
+        int differentPixels = Core.countNonZero(difference);
+        SyntheticFrames.release(expected, difference);
+        if (differentPixels != 0) {
+            throw new IllegalStateException(differentPixels + " pixels differ from sequential path");
+        }
+    }
+    
+    @Benchmark
+    public Mat sequential() {
+        Imgproc.erode(mask, fgMask, kernel);
+        Imgproc.dilate(fgMask, fgMask, kernel);
+        return fgMask;
+    }
+    
+    @Benchmark
+    public Mat parallelOpen() {
+        morphology.open(mask, fgMask, kernel);
+        return fgMask;
+    }
+    
+    @TearDown
+    public void tearDown() {
+        morphology.release();
+        SyntheticFrames.release(mask, fgMask, kernel);
+    }
+}
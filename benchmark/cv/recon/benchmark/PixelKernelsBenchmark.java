@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.util.PixelKernels;
+import java.util.concurrent.TimeUnit;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of PixelKernels against the OpenCV calls they stand in for:
+ * countNonZero, copyTo with a mask, and cvtColor to gray with threshold.
+ * <p/>
+ * The java benchmarks work on pixels already in Java arrays. The
+ * javaCountNonZeroWithGet benchmark adds the Mat.get copy, for when they
+ * are not.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelKernelsBenchmark {
+    
+    private static final int THRESHOLD = 100;
+    
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+    
+    private Mat frame;
+    private Mat mask;
+    private Mat output;
+    private Mat gray;
+    private byte[] framePixels;
+    private byte[] maskPixels;
+    private byte[] outputPixels;
+    private byte[] grayPixels;
+    private int pixels;
+    
+    @Setup
+    public void setup() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        Mat[] frames = SyntheticFrames.createFrames(size[0], size[1], 3, 1);
+        frame = frames[0];
+        mask = SyntheticFrames.createMask(size[0], size[1]);
+        output = new Mat(frame.size(), frame.type());
+        gray = new Mat(frame.size(), CvType.CV_8UC1);
+        
+        pixels = size[0] * size[1];
+        framePixels = new byte[pixels * 3];
+        maskPixels = new byte[pixels];
+        outputPixels = new byte[pixels * 3];
+        grayPixels = new byte[pixels];
+        frame.get(0, 0, framePixels);
+        mask.get(0, 0, maskPixels);
+    }
+    
+    @Benchmark
+    public int jniCountNonZero() {
+        return Core.countNonZero(mask);
+    }
+    
+    @Benchmark
+    public int javaCountNonZero() {
+        return PixelKernels.countNonZero(maskPixels, 0, pixels);
+    }
+    
+    @Benchmark
+    public int javaCountNonZeroWithGet() {
+        mask.get(0, 0, maskPixels);
+        return PixelKernels.countNonZero(maskPixels, 0, pixels);
+    }
+    
+    @Benchmark
+    public Mat jniCopyMasked() {
+        frame.copyTo(output, mask);
+        return output;
+    }
+    
+    @Benchmark
+    public byte[] javaCopyMasked() {
+        PixelKernels.copyMasked(framePixels, maskPixels, outputPixels, pixels, 3);
+        return outputPixels;
+    }
+    
+    @Benchmark
+    public Mat jniGrayThreshold() {
+        Imgproc.cvtColor(frame, gray, Imgproc.COLOR_RGB2GRAY);
+        Imgproc.threshold(gray, gray, THRESHOLD, 255, Imgproc.THRESH_BINARY);
+        return gray;
+    }
+    
+    @Benchmark
+    public byte[] javaGrayThreshold() {
+        PixelKernels.rgbToGrayThreshold(framePixels, grayPixels, pixels, THRESHOLD);
+        return grayPixels;
+    }
+    
+    @TearDown
+    public void tearDown() {
+        SyntheticFrames.release(frame, mask, output, gray);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.engine.ForegroundExtractor;
+import java.util.concurrent.TimeUnit;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Frames per second of ForegroundExtractor.apply at different processing
+ * scales, counting only and with the output at source resolution.
+ * <p/>
+ * ScaleComparison checks on real clips that the count does not change.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessingScaleBenchmark {
+    
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+    
+    @Param({"1", "0.5", "0.25"})
+    public double scale;
+    
+    private Mat[] frames;
+    private Mat output;
+    private ForegroundExtractor extractor;
+    private int index;
+    
+    @Setup
+    public void setup() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        frames = SyntheticFrames.createFrames(size[0], size[1], 3, 30);
+        output = new Mat();
+        
+        extractor = new ForegroundExtractor();
+        extractor.setProcessingScale(scale);
+        extractor.start();
+        for (Mat frame : frames) {
+            extractor.apply(frame, null);
+        }
+    }
+    
+    @Benchmark
+    public int count() {
+        int count = extractor.apply(frames[index], null);
+        index = (index + 1) % frames.length;
+        return count;
+    }
+    
+    @Benchmark
+    public Mat display() {
+        extractor.apply(frames[index], output);
+        index = (index + 1) % frames.length;
+        return output;
+    }
+    
+    @TearDown
+    public void tearDown() {
+        SyntheticFrames.release(frames);
+        output.release();
+        extractor.release();
+    }
+}
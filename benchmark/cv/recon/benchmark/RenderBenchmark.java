@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import com.sun.javafx.application.PlatformImpl;
+import cv.recon.util.MatFXUtils;
+import cv.recon.util.MatImageWriter;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.image.WritableImage;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of converting a Mat into a JavaFX image.
+ * <p/>
+ * Needs the JavaFX toolkit. On a machine without display, run with a
+ * headless Monocle build of JavaFX and
+ * <code>-Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw</code>,
+ * or use FrameBenchmark.readPixels which covers the toolkit-free part.
+ *
+ * @author Burhanuddin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+    
+    @Param({"1", "3"})
+    public int channels;
+    
+    private Mat src;
+    private WritableImage writableImage;
+    private MatImageWriter imageWriter;
+    
+    @Setup
+    public void setup() {
+        PlatformImpl.startup(() -> {
+        });
+        
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        src = SyntheticFrames.createFrames(size[0], size[1], channels, 1)[0];
+        writableImage = MatFXUtils.toFXImage(src, null);
+        imageWriter = new MatImageWriter();
+    }
+    
+    @Benchmark
+    public WritableImage toFXImage() {
+        MatFXUtils.toFXImage(src, writableImage);
+        return writableImage;
+    }
+    
+    @Benchmark
+    public WritableImage imageWriter() {
+        return imageWriter.write(src);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        imageWriter.release();
+        src.release();
+    }
+}
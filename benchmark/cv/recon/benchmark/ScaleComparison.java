@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import cv.recon.engine.BatchEngine;
+import cv.recon.engine.BatchResult;
+import cv.recon.engine.FrameSource;
+import cv.recon.engine.FrameSources;
+import org.opencv.core.Core;
+
+/**
+ * Run clips at several processing scales and compare repetition count and
+ * throughput with full resolution.
+ * <p/>
+ * Usage: <code>ant scale-comparison -Dclips="a.avi b.avi"</code> or
+ * <code>ScaleComparison [--scales 1,0.5,0.25] clip...</code>
+ *
+ * @author Burhanuddin
+ */
+public class ScaleComparison {
+    
+    private static final double[] DEFAULT_SCALES = {1, 0.5, 0.25};
+    
+    /**
+     * @param args Options followed by clips
+     */
+    public static void main(String[] args) {
+        double[] scales = DEFAULT_SCALES;
+        int first = 0;
+        if (args.length > 1 && args[0].equals("--scales")) {
+            String[] values = args[1].split(",");
+            scales = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                scales[i] = Double.parseDouble(values[i]);
+            }
+            first = 2;
+        }
+        
+        if (first >= args.length) {
+            System.err.println("Usage: ScaleComparison [--scales 1,0.5,0.25] clip...");
+            System.exit(1);
+        }
+        
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        
+        int mismatches = 0;
+        for (int i = first; i < args.length; i++) {
+            String clip = args[i];
+            long reference = -1;
+            double referenceFps = 0;
+            
+            for (double scale : scales) {
+                BatchResult result = run(clip, scale);
+                if (reference < 0) {
+                    reference = result.getCount();
+                    referenceFps = result.getFramesPerSecond();
+                }
+                
+                boolean same = result.getCount() == reference;
+                if (!same) {
+                    mismatches++;
+                }
+                System.out.println(String.format("%s scale=%.3f count=%d%s fps=%.1f speedup=%.2fx",
+                        clip, scale, result.getCount(), same ? "" : " (expected " + reference + ")",
+                        result.getFramesPerSecond(), result.getFramesPerSecond() / referenceFps));
+            }
+        }
+        
+        System.exit(mismatches == 0 ? 0 : 2);
+    }
+    
+    /**
+     * Count repetition of a clip at one processing scale.
+     * @param clip Video file
+     * @param scale Processing scale
+     * @return Result of the run
+     */
+    private static BatchResult run(String clip, double scale) {
+        FrameSource source = FrameSources.open(clip);
+        BatchEngine engine = new BatchEngine();
+        engine.setProcessingScale(scale);
+        try {
+            return engine.run(source);
+        } finally {
+            source.close();
+            engine.release();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Synthetic frames for benchmarks, so they run without a camera or video
+ * files.
+ *
+ * @author Burhanuddin
+ */
+public class SyntheticFrames {
+    
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+    
+    /**
+     * Make sure OpenCV native library is loaded.
+     */
+    public static void init() {
+        // loaded by static initializer
+    }
+    
+    /**
+     * Parse resolution parameter.
+     * @param resolution Resolution such as "640x480"
+     * @return Width and height
+     */
+    public static int[] parseResolution(String resolution) {
+        String[] parts = resolution.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+    
+    /**
+     * Create frames of a noisy background with a bright block moving up and
+     * down, one full cycle over the frames.
+     * @param width Frame width
+     * @param height Frame height
+     * @param channels 1 or 3
+     * @param count Number of frames
+     * @return Frames
+     */
+    public static Mat[] createFrames(int width, int height, int channels, int count) {
+        Mat background = new Mat(height, width, CvType.makeType(CvType.CV_8U, channels));
+        Core.randu(background, 0, 32);
+        
+        Mat[] frames = new Mat[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = background.clone();
+            
+            double phase = 2 * Math.PI * i / count;
+            int top = (int) (height * (0.3 + 0.2 * Math.sin(phase)));
+            Core.rectangle(frames[i],
+                    new Point(width * 0.4, top),
+                    new Point(width * 0.6, top + height * 0.4),
+                    Scalar.all(200), -1);
+        }
+        background.release();
+        
+        return frames;
+    }
+    
+    /**
+     * Create a binary foreground mask with a block and sparse noise, as left
+     * by background subtraction before morphology.
+     * @param width Mask width
+     * @param height Mask height
+     * @return Mask with values 0 and 255
+     */
+    public static Mat createMask(int width, int height) {
+        Mat mask = new Mat(height, width, CvType.CV_8UC1);
+        Core.randu(mask, 0, 256);
+        Imgproc.threshold(mask, mask, 250, 255, Imgproc.THRESH_BINARY);
+        
+        Core.rectangle(mask,
+                new Point(width * 0.4, height * 0.3),
+                new Point(width * 0.6, height * 0.7),
+                Scalar.all(255), -1);
+        return mask;
+    }
+    
+    /**
+     * Release frames.
+     * @param frames Frames to release
+     */
+    public static void release(Mat... frames) {
+        for (Mat frame : frames) {
+            frame.release();
+        }
+    }
+}
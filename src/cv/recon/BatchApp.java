@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon;
+
+import cv.recon.engine.BackgroundModelType;
+import cv.recon.engine.BatchEngine;
+import cv.recon.engine.BatchResult;
+import cv.recon.engine.CounterType;
+import cv.recon.engine.FrameSource;
+import cv.recon.engine.FrameSources;
+import cv.recon.engine.Session;
+import cv.recon.engine.SessionRuntime;
+import cv.recon.engine.Signal;
+import cv.recon.engine.SignalListener;
+import cv.recon.log.SessionLog;
+import cv.recon.server.SessionFeed;
+import cv.recon.server.StatusServer;
+import cv.recon.util.NativeLoader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Command line entry point that counts repetition in video files without
+ * JavaFX.
+ * <p/>
+ * Usage: <code>java -Djava.library.path=lib -cp CV-RECON.jar:lib/opencv-2411.jar
+ * cv.recon.BatchApp [--threads n | --parallel] [--roi] [--scale s | --pixels n]
+ * [--model name] [--signal name] [--counter name] [--record dir] [--log dir]
+ * [--http [host:]port] source...</code>
+ * <p/>
+ * Without --threads, sources are processed one after another on the main
+ * thread. With --threads, every source runs as a session on a shared pool of
+ * n worker threads and throughput is reported every few seconds. A source is
+ * a video file, a device index, or a recording of FrameRecorder, which is
+ * replayed as fast as possible. With --roi, processing is restricted to a
+ * region of interest learned from the foreground of each source. --scale
+ * processes frames at a fraction of their size, such as 0.5, and --pixels at
+ * the largest size within a pixel budget. --parallel runs morphology of the
+ * single source being processed on every core. --model picks a cheaper
+ * background model than MOG2, running-average or frame-difference, see
+ * BackgroundModelType. --signal counts repetition on another feature of the
+ * foreground than its pixel count, such as centroid-y or height, see Signal.
+ * --counter periodicity counts by the dominant period of the signal instead
+ * of mid range crossings, see CounterType. --record writes every frame read
+ * from a source into a recording in the given directory, named after the
+ * source. --log writes every sample of each source into a SessionLog in the
+ * given directory, see LogReport. --http publishes the count, the signal
+ * and the processed output of every source on a StatusServer, on the
+ * loopback address unless a host is given.
+ *
+ * @author Burhanuddin
+ */
+public class BatchApp {
+    
+    private static final long REPORT_PERIOD = 5;
+    
+    /**
+     * @param args Options followed by sources
+     */
+    public static void main(String[] args) {
+        int threads = 0;
+        boolean roiTracking = false;
+        boolean parallel = false;
+        double scale = 1;
+        long pixels = 0;
+        Signal signal = Signal.COUNT;
+        CounterType counterType = CounterType.MID_RANGE;
+        BackgroundModelType modelType = BackgroundModelType.MOG2;
+        Path recordDir = null;
+        Path logDir = null;
+        InetSocketAddress httpAddress = null;
+        List<String> specs = new ArrayList<>();
+        
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--parallel")) {
+                parallel = true;
+            } else if (args[i].equals("--roi")) {
+                roiTracking = true;
+            } else if (args[i].equals("--scale") && i + 1 < args.length) {
+                scale = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--pixels") && i + 1 < args.length) {
+                pixels = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--signal") && i + 1 < args.length) {
+                signal = Signal.valueOf(args[++i].toUpperCase(Locale.ROOT).replace('-', '_'));
+            } else if (args[i].equals("--model") && i + 1 < args.length) {
+                modelType = BackgroundModelType.valueOf(args[++i].toUpperCase(Locale.ROOT).replace('-', '_'));
+            } else if (args[i].equals("--counter") && i + 1 < args.length) {
+                counterType = CounterType.valueOf(args[++i].toUpperCase(Locale.ROOT).replace('-', '_'));
+            } else if (args[i].equals("--record") && i + 1 < args.length) {
+                recordDir = Paths.get(args[++i]);
+            } else if (args[i].equals("--log") && i + 1 < args.length) {
+                logDir = Paths.get(args[++i]);
+            } else if (args[i].equals("--http") && i + 1 < args.length) {
+                httpAddress = parseAddress(args[++i]);
+            } else {
+                specs.add(args[i]);
+            }
+        }
+        
+        if (specs.isEmpty()) {
+            System.err.println("Usage: BatchApp [--threads n | --parallel] [--roi] [--scale s | --pixels n]"
+                    + " [--model name] [--signal name] [--counter name] [--record dir] [--log dir]"
+                    + " [--http [host:]port] source...");
+            System.exit(1);
+        }
+        
+        NativeLoader.load();
+        
+        StatusServer server = null;
+        if (httpAddress != null) {
+            try {
+                server = new StatusServer(httpAddress);
+                server.start();
+                System.out.println("Serving on http://" + httpAddress.getHostString() + ":" + server.getPort() + "/");
+            } catch (IOException ex) {
+                Logger.getLogger(BatchApp.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        
+        if (threads > 0) {
+            runConcurrently(specs, threads, roiTracking, scale, pixels, modelType, signal,
+                    counterType, recordDir, logDir, server);
+        } else {
+            runSequentially(specs, parallel, roiTracking, scale, pixels, modelType, signal,
+                    counterType, recordDir, logDir, server);
+        }
+        
+        if (server != null) {
+            server.stop();
+        }
+    }
+    
+    /**
+     * Run sources one after another with BatchEngine.
+     * @param specs Sources
+     * @param parallel Whether to run morphology on every core
+     * @param roiTracking Whether to track a region of interest
+     * @param scale Processing scale
+     * @param pixels Processing pixel budget, 0 for none
+     * @param modelType Kind of background model
+     * @param signal Repetition signal
+     * @param counterType Kind of repetition counter
+     * @param recordDir Directory to record sources into, null for none
+     * @param logDir Directory to log samples into, null for none
+     * @param server Server to publish sources on, null for none
+     */
+    private static void runSequentially(List<String> specs, boolean parallel, boolean roiTracking,
+            double scale, long pixels, BackgroundModelType modelType, Signal signal,
+            CounterType counterType, Path recordDir, Path logDir, StatusServer server) {
+        BatchEngine engine = new BatchEngine();
+        engine.setParallelMorphology(parallel);
+        engine.setRoiTracking(roiTracking);
+        engine.setProcessingScale(scale);
+        engine.setPixelBudget(pixels);
+        engine.setBackgroundModel(modelType);
+        engine.setSignal(signal);
+        engine.setCounter(counterType);
+        for (String spec : specs) {
+            FrameSource source;
+            try {
+                source = open(spec, recordDir);
+            } catch (IllegalArgumentException ex) {
+                Logger.getLogger(BatchApp.class.getName()).log(Level.SEVERE, ex.getMessage());
+                continue;
+            }
+            
+            SessionLog log = openLog(spec, logDir);
+            SessionFeed feed = server != null ? server.addFeed(name(spec), true) : null;
+            engine.setSignalListener(combine(log, feed));
+            engine.setEncoder(feed != null ? feed.getEncoder() : null);
+            try {
+                BatchResult result = engine.run(source);
+                System.out.println(spec + ": " + result);
+            } finally {
+                source.close();
+                if (log != null) {
+                    log.close();
+                }
+            }
+        }
+        engine.release();
+    }
+    
+    /**
+     * Run every source as a session of a SessionRuntime.
+     * @param specs Sources
+     * @param threads Number of worker threads
+     * @param roiTracking Whether to track a region of interest
+     * @param scale Processing scale
+     * @param pixels Processing pixel budget, 0 for none
+     * @param modelType Kind of background model
+     * @param signal Repetition signal
+     * @param counterType Kind of repetition counter
+     * @param recordDir Directory to record sources into, null for none
+     * @param logDir Directory to log samples into, null for none
+     * @param server Server to publish sources on, null for none
+     */
+    private static void runConcurrently(List<String> specs, int threads, boolean roiTracking,
+            double scale, long pixels, BackgroundModelType modelType, Signal signal,
+            CounterType counterType, Path recordDir, Path logDir, StatusServer server) {
+        SessionRuntime runtime = new SessionRuntime(threads);
+        List<SessionLog> logs = new ArrayList<>();
+        for (String spec : specs) {
+            try {
+                Session session = new Session(spec, open(spec, recordDir));
+                session.setRoiTracking(roiTracking);
+                session.setProcessingScale(scale);
+                session.setPixelBudget(pixels);
+                session.setBackgroundModel(modelType);
+                session.setSignal(signal);
+                session.setCounter(counterType);
+                SessionLog log = openLog(spec, logDir);
+                if (log != null) {
+                    logs.add(log);
+                }
+                SessionFeed feed = server != null ? server.addFeed(name(spec), true) : null;
+                if (feed != null) {
+                    session.setEncoder(feed.getEncoder());
+                }
+                session.setSignalListener(combine(log, feed));
+                runtime.add(session);
+            } catch (IllegalArgumentException ex) {
+                Logger.getLogger(BatchApp.class.getName()).log(Level.SEVERE, ex.getMessage());
+            }
+        }
+        
+        runtime.startReporting(REPORT_PERIOD, TimeUnit.SECONDS, System.out);
+        try {
+            runtime.awaitCompletion();
+            runtime.shutdown();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(BatchApp.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        logs.forEach(SessionLog::close);
+        
+        for (Session session : runtime.getSessions()) {
+            System.out.println(session.getName() + ": " + session.getResult());
+        }
+    }
+    
+    /**
+     * Open a source, recording it if asked to.
+     * @param spec Source
+     * @param recordDir Directory to record into, null for none
+     * @return Opened source
+     * @throws IllegalArgumentException If the source cannot be opened
+     */
+    private static FrameSource open(String spec, Path recordDir) {
+        FrameSource source = FrameSources.open(spec);
+        if (recordDir == null) {
+            return source;
+        }
+        return FrameSources.record(source, recordDir.resolve(name(spec)));
+    }
+    
+    /**
+     * Open a session log for a source if asked to.
+     * @param spec Source
+     * @param logDir Directory to log into, null for none
+     * @return Opened log, null if not asked for or it cannot be opened
+     */
+    private static SessionLog openLog(String spec, Path logDir) {
+        if (logDir == null) {
+            return null;
+        }
+        try {
+            Files.createDirectories(logDir);
+            return new SessionLog(logDir.resolve(name(spec) + SessionLog.EXTENSION));
+        } catch (IOException ex) {
+            Logger.getLogger(BatchApp.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+    
+    /**
+     * Pass samples to both of two listeners.
+     * @param first Listener, may be null
+     * @param second Listener, may be null
+     * @return Composed listener, null if both are
+     */
+    private static SignalListener combine(SignalListener first, SignalListener second) {
+        if (first == null) {
+            return second;
+        }
+        return second == null ? first : first.andThen(second);
+    }
+    
+    /**
+     * Parse the address of the HTTP server.
+     * @param spec Port, or host and port separated by a colon
+     * @return Address, on the loopback address if no host is given
+     */
+    private static InetSocketAddress parseAddress(String spec) {
+        int colon = spec.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        }
+        return new InetSocketAddress(spec.substring(0, colon), Integer.parseInt(spec.substring(colon + 1)));
+    }
+    
+    /**
+     * Name files written for a source after it.
+     * @param spec Source
+     * @return File name of the source without extension
+     */
+    private static String name(String spec) {
+        return Paths.get(spec).getFileName().toString().replaceAll("\\.[^.]*$", "");
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon;
+
+import cv.recon.log.SessionLogReader;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Command line entry point that prints repetitions per period of a session
+ * log.
+ * <p/>
+ * Usage: <code>java -cp CV-RECON.jar cv.recon.LogReport [--period seconds]
+ * log</code>
+ * <p/>
+ * The period defaults to a minute. Periods without repetition are printed as
+ * well, followed by the total.
+ *
+ * @author Burhanuddin
+ */
+public class LogReport {
+    
+    private static final long DEFAULT_PERIOD = 60;
+    
+    /**
+     * @param args Options followed by a log file
+     */
+    public static void main(String[] args) {
+        long period = DEFAULT_PERIOD;
+        String file = null;
+        
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--period") && i + 1 < args.length) {
+                period = Long.parseLong(args[++i]);
+            } else {
+                file = args[i];
+            }
+        }
+        
+        if (file == null || period <= 0) {
+            System.err.println("Usage: LogReport [--period seconds] log");
+            System.exit(1);
+        }
+        
+        try {
+            long start = System.nanoTime();
+            SessionLogReader reader = new SessionLogReader(Paths.get(file));
+            long[] counts = reader.countRepetitions(period * 1000);
+            long elapsed = System.nanoTime() - start;
+            
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                System.out.println(i * period + "s\t" + counts[i]);
+                total += counts[i];
+            }
+            System.out.println(String.format("%d repetitions in %d records, read in %.1f ms",
+                    total, reader.getRecordCount(), elapsed / 1e6));
+        } catch (IOException ex) {
+            Logger.getLogger(LogReport.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        }
+    }
+}
@@ -17,8 +17,9 @@
 package cv.recon;
 
 import cv.recon.controller.RootLayoutController;
+import cv.recon.util.NativeLoader;
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.lang.management.ManagementFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.application.Application;
@@ -27,7 +28,6 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
-import org.opencv.core.Core;
 
 /**
  *
@@ -39,38 +39,28 @@ public class MainApp extends Application {
     public static final String VIEW_DIR = "/cv/recon/view/";
     
     public Stage primaryStage;
-    private final boolean debug = true;
     
+    /**
+     * Start loading the OpenCV library in the background, then load the views,
+     * which only wait for the library where they need it.
+     * @param primaryStage 
+     */
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
         
-        loadOpenCV();
+        NativeLoader.loadAsync();
         initRootLayout();
+        logStartup("Window shown");
     }
     
     /**
-     * Load OpenCV library for JNI.
-     * <p/>
-     * For debug build, the path to DLL file is in lib folder in class path.
-     * For release build, the path is in lib folder relative to the JAR file.
+     * Log how long after the start of the JVM a startup milestone is reached.
+     * @param milestone Milestone, such as the window being shown
      */
-    private void loadOpenCV() {
-        try {
-            if (!debug) {
-                String path = getClass().getProtectionDomain().getCodeSource().getLocation().getPath();
-                String dir = path.substring("/".length(), path.length() - MainApp.TITLE.length() - ".jar".length());
-                System.setProperty("java.library.path", dir + "/lib");
-
-                final Field sysPathsField = ClassLoader.class.getDeclaredField("sys_paths");
-                sysPathsField.setAccessible(true);
-                sysPathsField.set(null, null);
-            }
-            
-            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
-        } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException ex) {
-            Logger.getLogger(MainApp.class.getName()).log(Level.SEVERE, null, ex);
-        }
+    public static void logStartup(String milestone) {
+        Logger.getLogger(MainApp.class.getName()).log(Level.INFO, "{0} {1} ms after JVM start",
+                new Object[] {milestone, ManagementFactory.getRuntimeMXBean().getUptime()});
     }
     
     /**
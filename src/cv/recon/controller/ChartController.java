@@ -16,11 +16,14 @@
  */
 package cv.recon.controller;
 
+import cv.recon.engine.Stage;
+import cv.recon.engine.StageStatistics;
+import cv.recon.util.HistoryBuffer;
+import cv.recon.util.Lttb;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
-import java.util.Timer;
-import java.util.TimerTask;
-import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -28,17 +31,25 @@ import javafx.fxml.Initializable;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
-import cv.recon.util.Math;
-import cv.recon.util.Position;
 import javafx.scene.control.Label;
 
 /**
  * FXML Controller class
+ * <p/>
+ * Samples are added from any thread into a primitive HistoryBuffer holding
+ * minutes of history. On refresh, called once per pulse by
+ * RootLayoutController, if samples were added, the history is
+ * downsampled with Lttb to at most POINTS points, and a fixed set of chart
+ * nodes is updated in place. The chart thus shows the whole history at a
+ * constant node count and render cost.
  *
  * @author Burhanuddin
  */
 public class ChartController implements Initializable {
 
+    public static final int HISTORY_CAPACITY = 1 << 14;
+    public static final int POINTS = 300;
+    
     @FXML
     private Label countLabel;
     @FXML
@@ -48,143 +59,163 @@ public class ChartController implements Initializable {
     @FXML
     private LineChart<Number, Number> lineChart;
     
-    private OutputDisplayController outputController;
     private ObservableList<XYChart.Data<Number, Number>> nonZeroCountValues;
     private XYChart.Series<Number, Number> nonZeroCountSeries;
     private ObservableList<XYChart.Data<Number, Number>> midRangeValues;
     private XYChart.Series<Number, Number> midRangeSeries;
+    private List<XYChart.Data<Number, Number>> points;
+    private XYChart.Data<Number, Number> midRangeStart;
+    private XYChart.Data<Number, Number> midRangeEnd;
+    private final double[] pointX = new double[POINTS];
+    private final double[] pointY = new double[POINTS];
+    private long displayedCount;
+    private StageStatistics statistics;
+    
+    private final HistoryBuffer history = new HistoryBuffer(HISTORY_CAPACITY);
+    private final HistoryBuffer snapshot = new HistoryBuffer(HISTORY_CAPACITY);
+    private int pending;
     private long startTime;
-    private long elapsedTime;
+    private double midRange;
     private long count;
-    private Timer timer;
-    private Position currentPosition;
+    private boolean dirty;
     
     /**
-     * Start timer to run a new thread that updates chart.
+     * Clear chart and count, called when counting starts.
      */
-    public void startTimer() {
-        if (timer == null) {
+    public void reset() {
+        synchronized (history) {
+            history.clear();
+            pending = 0;
+            startTime = -1;
             count = 0;
-            currentPosition = Position.CLOSE_TO_INITIAL;
-            nonZeroCountValues.clear();
-            startTime = System.nanoTime();
-
-            timer = new Timer();
-            timer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    elapsedTime = System.nanoTime() - startTime;
-                    elapsedTime = elapsedTime / 1000000;
-
-                    Platform.runLater(() -> {
-                        addNonZeroCount(outputController.getNonZeroPixelCount());
-                    });
-                }
-            }, 0, 100);
-        }
-    }
-    
-    /**
-     * Stop timer
-     */
-    public void stopTimer() {
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+            dirty = false;
         }
+        snapshot.clear();
+        displayedCount = 0;
+        countLabel.setText("0");
+        nonZeroCountValues.clear();
+        midRangeValues.clear();
     }
     
     /**
-     * Add non-zero pixel count to chart.
+     * Add a sample of the repetition signal to the history. May be called
+     * from any thread, the chart is updated on the next pulse.
      * 
+     * @param timestamp Capture timestamp of the frame in milliseconds
      * @param nonZeroCount Non-zero pixel count
+     * @param midRange Mid range of the counter window
+     * @param count Repetition count
      */
-    private void addNonZeroCount(int nonZeroCount) {
-        nonZeroCountValues.add(new XYChart.Data<>(elapsedTime, nonZeroCount));
-        
-        clearOldData();
-        calculateMidRange();
-    }
-    
-    /**
-     * Remove earliest data to limit the graph to only display a maximum
-     * amount of data
-     */
-    private void clearOldData() {
-        if (nonZeroCountValues.size() > 50) {
-            nonZeroCountValues.remove(0);
+    public void addSample(long timestamp, double nonZeroCount, double midRange, long count) {
+        synchronized (history) {
+            if (startTime < 0) {
+                startTime = timestamp;
+            }
+            history.add(timestamp, nonZeroCount);
+            if (pending < HISTORY_CAPACITY) {
+                pending++;
+            }
+            this.midRange = midRange;
+            this.count = count;
+            dirty = true;
         }
     }
     
     /**
-     * Calculate mid range value and update the chart
+     * Record time spent updating the chart as Stage.CHART.
+     * @param statistics Statistics to record into, null to stop recording
      */
-    private void calculateMidRange() {
-        if (!nonZeroCountValues.isEmpty()) {
-            double midRange = Math.midRange(nonZeroCountValues);
-            
-            checkRepetition(midRange);
-            setMidRangeOnChart(midRange);
-        }
+    public void setStatistics(StageStatistics statistics) {
+        this.statistics = statistics;
     }
     
     /**
-     * Check if there is a change in position according to mid range value. If 
-     * yes, then it is considered a repetition. The counter increased when the
-     * position changed from AWAY_FROM_INITIAL to CLOSE_TO_INITIAL.
-     * 
-     * @param midRange Mid range value
+     * Downsample the history and update chart nodes in place, if samples were
+     * added since the last refresh. Called on JavaFX thread.
+     * <p/>
+     * Only the samples added since the last refresh are copied under the lock,
+     * into a snapshot owned by the JavaFX thread, and the snapshot is
+     * downsampled outside it, so the processing thread never waits for the
+     * downsampling.
      */
-    private void checkRepetition(double midRange) {
-        double currentValue = nonZeroCountValues
-                                .get(nonZeroCountValues.size() - 1) // last position
-                                .getYValue()
-                                .doubleValue();
+    public void refresh() {
+        long refreshStart = System.nanoTime();
+        long origin;
+        double latestMidRange;
+        long latestCount;
         
-        Position newPos;
-        if (currentValue > midRange) {
-            newPos = Position.AWAY_FROM_INITIAL;
-        } else {
-            newPos = Position.CLOSE_TO_INITIAL;
+        synchronized (history) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            int size = history.size();
+            for (int i = size - pending; i < size; i++) {
+                snapshot.add(history.getTimestamp(i), history.getValue(i));
+            }
+            pending = 0;
+            origin = startTime;
+            latestMidRange = midRange;
+            latestCount = count;
         }
         
-        if (!currentPosition.equals(newPos)) {
-            currentPosition = newPos;
-            
-            if (currentPosition.equals(Position.CLOSE_TO_INITIAL)) {
-                count++;
-                countLabel.setText("" + count);
-            }
+        int n = Lttb.downsample(snapshot, POINTS, origin, 0.001, pointX, pointY);
+        
+        int size = nonZeroCountValues.size();
+        if (size < n) {
+            nonZeroCountValues.addAll(points.subList(size, n));
+        } else if (size > n) {
+            nonZeroCountValues.remove(n, size);
+        }
+        for (int i = 0; i < n; i++) {
+            XYChart.Data<Number, Number> point = points.get(i);
+            point.setXValue(pointX[i]);
+            point.setYValue(pointY[i]);
+        }
+        
+        setMidRangeOnChart(pointX[0], pointX[n - 1], latestMidRange);
+        
+        if (displayedCount != latestCount) {
+            displayedCount = latestCount;
+            countLabel.setText("" + latestCount);
+        }
+        
+        StageStatistics stats = statistics;
+        if (stats != null) {
+            stats.recordSince(Stage.CHART, refreshStart);
         }
     }
     
     /**
-     * Add mid range series on non-zero pixel count chart.
+     * Set mid range line across the displayed history.
      * 
+     * @param start Time of the first displayed sample
+     * @param end Time of the last displayed sample
      * @param midRange Mid range value
      */
-    private void setMidRangeOnChart(double midRange) {
-        Number start = nonZeroCountValues.get(0).getXValue();
-            
+    private void setMidRangeOnChart(double start, double end, double midRange) {
+        midRangeStart.setXValue(start);
+        midRangeStart.setYValue(midRange);
+        midRangeEnd.setXValue(end);
+        midRangeEnd.setYValue(midRange);
+        
         if (midRangeValues.isEmpty()) {
-            midRangeValues.add(new XYChart.Data<>(start, midRange));
-        } else {
-            Number end = nonZeroCountValues.get(nonZeroCountValues.size() - 1).getXValue();
-            midRangeValues.setAll(new XYChart.Data<>(start, midRange), new XYChart.Data<>(end, midRange));
+            midRangeValues.add(midRangeStart);
+            midRangeValues.add(midRangeEnd);
         }
     }
     
-    /**
-     * Called from root layout to make reference to output display controller.
-     * 
-     * @param outputController 
-     */
-    public void setOutputController(OutputDisplayController outputController) {
-        this.outputController = outputController;
-    }
-    
     @Override
     public void initialize(URL url, ResourceBundle rb) {
+        startTime = -1;
+        
+        points = new ArrayList<>(POINTS);
+        for (int i = 0; i < POINTS; i++) {
+            points.add(new XYChart.Data<>(0, 0));
+        }
+        midRangeStart = new XYChart.Data<>(0, 0);
+        midRangeEnd = new XYChart.Data<>(0, 0);
+        
         nonZeroCountValues = FXCollections.observableArrayList();
         nonZeroCountSeries = new XYChart.Series<>("Start point", nonZeroCountValues);
         lineChart.getData().add(nonZeroCountSeries);
@@ -194,6 +225,7 @@ public class ChartController implements Initializable {
         lineChart.getData().add(midRangeSeries);
         
         xAxis.setForceZeroInRange(false);
+        xAxis.setLabel("Seconds");
     }    
     
 }
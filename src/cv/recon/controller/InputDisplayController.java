@@ -16,14 +16,18 @@
  */
 package cv.recon.controller;
 
-import cv.recon.util.MatFXUtils;
+import cv.recon.util.MatImageWriter;
 import java.net.URL;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.image.WritableImage;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 
 /**
  * FXML Controller class
@@ -35,24 +39,62 @@ public class InputDisplayController implements Initializable {
     @FXML
     private ImageView inputView;
     
-    private WritableImage writableImage;
+    private static final int MIN_REGION_SIZE = 8;
+    
+    private MatImageWriter imageWriter;
+    private Consumer<Rect> regionSelected;
+    private double pressedX;
+    private double pressedY;
     
     /**
      * Update input view without image processing.
      * @param src Original Mat
      */
     public void updateView(Mat src) {
-        if (writableImage == null) {
-            writableImage = MatFXUtils.toFXImage(src, null);
-        } else {
-            MatFXUtils.toFXImage(src, writableImage);
+        WritableImage image = imageWriter.write(src);
+        if (inputView.getImage() != image) {
+            inputView.setImage(image);
+        }
+    }
+    
+    /**
+     * Set handler for a region of interest dragged on the input view.
+     * @param regionSelected Receiver of the region in frame pixels
+     */
+    public void setOnRegionSelected(Consumer<Rect> regionSelected) {
+        this.regionSelected = regionSelected;
+    }
+    
+    /**
+     * Convert a drag on the input view to frame pixels and pass it on.
+     * @param event Mouse released event
+     */
+    private void selectRegion(MouseEvent event) {
+        Image image = inputView.getImage();
+        if (image == null || regionSelected == null) {
+            return;
+        }
+        
+        double scale = image.getWidth() / inputView.getBoundsInLocal().getWidth();
+        int x = (int) (Math.min(pressedX, event.getX()) * scale);
+        int y = (int) (Math.min(pressedY, event.getY()) * scale);
+        int width = (int) (Math.abs(event.getX() - pressedX) * scale);
+        int height = (int) (Math.abs(event.getY() - pressedY) * scale);
+        
+        if (width >= MIN_REGION_SIZE && height >= MIN_REGION_SIZE) {
+            regionSelected.accept(new Rect(x, y, width, height));
         }
-        inputView.setImage(writableImage);
     }
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
+        imageWriter = new MatImageWriter();
         
+        inputView.setOnMousePressed(event -> {
+            pressedX = event.getX();
+            pressedY = event.getY();
+        });
+        inputView.setOnMouseReleased(this::selectRegion);
     }    
     
 }
@@ -16,9 +16,9 @@
  */
 package cv.recon.controller;
 
-import cv.recon.util.MatFXUtils;
+import cv.recon.util.MatImageWriter;
+import cv.recon.util.RegionSet;
 import java.net.URL;
-import java.util.List;
 import java.util.ResourceBundle;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -27,11 +27,8 @@ import javafx.scene.image.ImageView;
 import javafx.scene.image.WritableImage;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.Rect;
+import org.opencv.core.Point;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
-import org.opencv.video.BackgroundSubtractorMOG2;
 
 /**
  * FXML Controller class
@@ -45,140 +42,41 @@ public class OutputDisplayController implements Initializable {
     @FXML
     private Label nonZeroLabel;
     
-    private BackgroundSubtractorMOG2 bsmog;
-    private Mat fgMask;
-    private Mat kernel;
-    private Mat output;
-    private WritableImage writableImage;
-    private int nonZeroCount;
-    private boolean isFirstFrame;
+    private static final Scalar REGION_COLOR = new Scalar(0, 255, 0);
+    
+    private MatImageWriter imageWriter;
+    private final Point topLeft = new Point();
+    private final Point bottomRight = new Point();
     
     /**
-     * Update output view after image processing.
-     * @param src Original Mat
+     * Update output view with a processed frame.
+     * @param output Foreground of the frame, empty if background subtraction
+     * has not started
+     * @param nonZeroCount Non-zero pixel count of foreground mask
+     * @param regions Foreground regions to outline on the output
      */
-    public void updateView(Mat src) {
-        if (!src.empty()) {
-            processImage(src);
-        }
-
+    public void updateView(Mat output, int nonZeroCount, RegionSet regions) {
         if (!output.empty()) {
-            if (writableImage == null) {
-                writableImage = MatFXUtils.toFXImage(output, null);
-            } else {
-                MatFXUtils.toFXImage(output, writableImage);
+            for (int i = 0; i < regions.size(); i++) {
+                topLeft.x = regions.getX(i);
+                topLeft.y = regions.getY(i);
+                bottomRight.x = regions.getX(i) + regions.getWidth(i);
+                bottomRight.y = regions.getY(i) + regions.getHeight(i);
+                Core.rectangle(output, topLeft, bottomRight, REGION_COLOR);
             }
-            outputView.setImage(writableImage);
-        }
-    }
-    
-    /**
-     * Image processing.
-     * @param src Source Mat
-     */
-    private void processImage(Mat src) {
-        subtractBackground(src);
-    }
-    
-    /**
-     * Subtract background using BackgroundSubtractorMOG2
-     * @param src Source Mat
-     */
-    private void subtractBackground(Mat src) {
-        if (bsmog != null) {
-            bsmog.apply(src, fgMask);
-            
-            Imgproc.erode(fgMask, fgMask, kernel);
-            Imgproc.dilate(fgMask, fgMask, kernel);
             
-            output.setTo(new Scalar(0));
-            src.copyTo(output, fgMask);
-            
-            if (isFirstFrame) {
-                nonZeroCount = 0;
-                isFirstFrame = false;
-            } else {
-                nonZeroCount = Core.countNonZero(fgMask);
+            WritableImage image = imageWriter.write(output);
+            if (outputView.getImage() != image) {
+                outputView.setImage(image);
             }
-            nonZeroLabel.setText("" + nonZeroCount);
-        }
-    }
-    
-    /**
-     * Combine overlapping rectangles.
-     * @param rectangles A list of rectangles
-     */
-    private void combineOverlappingRectangles(List<Rect> rectangles) {
-        boolean stillOverlap;
-        
-        do{
-            stillOverlap = false;
             
-            for (int i = 0; i < rectangles.size(); i++) {
-                Rect rectA = rectangles.get(i);
-                
-                for (int j = 0; j < rectangles.size(); j++) {
-                    Rect rectAClone = rectA.clone();
-                    Rect rectB = rectangles.get(j);
-                    
-                    if (rectA.equals(rectB)) {
-                        continue;
-                    }
-                    
-                    if (isOverlap(rectA, rectB)) {
-                        rectA.x = Math.min(rectA.x, rectB.x);
-                        rectA.y = Math.min(rectA.y, rectB.y);
-                        rectA.width = Math.max(rectAClone.x + rectAClone.width,
-                                rectB.x + rectB.width);
-                        rectA.width -= rectA.x;
-                        rectA.height = Math.max(rectAClone.y + rectAClone.height,
-                                rectB.y + rectB.height);
-                        rectA.height -= rectA.y;
-                        
-                        rectangles.remove(rectB);
-                        
-                        stillOverlap = true;
-                    }
-                }
-            }
-        } while (stillOverlap);
-    }
-    
-    /**
-     * Check if two rectangles overlap.
-     * @param a First rectangle
-     * @param b Second rectangle
-     * @return A boolean stating whether two rectangles overlap.
-     */
-    private boolean isOverlap(Rect a, Rect b) {
-        return a.x <= (b.x + b.width) &&
-               (a.x + a.width) >= b.x &&
-               a.y <= (b.y + b.height) &&
-               (a.y + a.height) >= b.y;
-    }
-    
-    /**
-     * Start background subtraction using first frame as background frame.
-     */
-    public void startBackgroundSubtraction() {
-        bsmog = new BackgroundSubtractorMOG2(100, 75f, false);
-        isFirstFrame = true;
-    }
-    
-    /**
-     * Return non-zero pixel count of foreground mask.
-     * @return Non-zero pixel count
-     */
-    public int getNonZeroPixelCount() {
-        return nonZeroCount;
+            nonZeroLabel.setText(nonZeroCount + " (" + regions.size() + " regions)");
+        }
     }
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        fgMask = new Mat();
-        output = new Mat();
-        
-        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(10, 10));
+        imageWriter = new MatImageWriter();
     }    
     
 }
@@ -17,22 +17,42 @@
 package cv.recon.controller;
 
 import cv.recon.MainApp;
+import cv.recon.engine.BackgroundModelType;
+import cv.recon.engine.CounterType;
+import cv.recon.engine.Frame;
+import cv.recon.engine.FrameSource;
+import cv.recon.engine.FrameSources;
+import cv.recon.engine.ForegroundExtractor;
+import cv.recon.engine.Pipeline;
+import cv.recon.engine.SignalListener;
+import cv.recon.engine.Stage;
+import cv.recon.engine.StageStatistics;
+import cv.recon.log.SessionLog;
+import cv.recon.metrics.MetricsPublisher;
+import cv.recon.util.NativeLoader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.ResourceBundle;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javafx.application.Platform;
+import javafx.animation.AnimationTimer;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
+import javafx.scene.control.CheckBox;
 import javafx.scene.layout.HBox;
-import org.opencv.core.Mat;
-import org.opencv.highgui.VideoCapture;
+import org.opencv.core.Rect;
 
 /**
  *
@@ -46,43 +66,179 @@ public class RootLayoutController implements Initializable {
     private HBox outputBox;
     @FXML
     private HBox chartBox;
+    @FXML
+    private CheckBox roiCheckBox;
     
     public MainApp mainApp;
     private InputDisplayController inputController;
     private OutputDisplayController outputController;
     private ChartController chartController;
     
-    private VideoCapture vid;
-    private Timer timer;
-    private Mat src;
+    /**
+     * System property giving the period of the metrics log line in seconds,
+     * no log line if unset.
+     */
+    public static final String METRICS_LOG_PROPERTY = "cv.recon.metrics.log";
+    
+    /**
+     * System property giving the frame source, see FrameSources. Defaults to
+     * the default webcam. Recordings are replayed in real time.
+     */
+    public static final String SOURCE_PROPERTY = "cv.recon.source";
+    
+    /**
+     * System property giving the path of a recording to write every captured
+     * frame to, without segment number and extension. Nothing is recorded if
+     * unset.
+     */
+    public static final String RECORD_PROPERTY = "cv.recon.record";
+    
+    /**
+     * System property giving the path of a SessionLog to append every sample
+     * of the repetition signal to. Nothing is logged if unset.
+     */
+    public static final String LOG_PROPERTY = "cv.recon.log";
+    
+    /**
+     * System property giving the kind of repetition counter, see CounterType.
+     * Defaults to mid range.
+     */
+    public static final String COUNTER_PROPERTY = "cv.recon.counter";
+    
+    /**
+     * System property giving the kind of background model, see
+     * BackgroundModelType. Defaults to MOG2.
+     */
+    public static final String MODEL_PROPERTY = "cv.recon.model";
+    
+    /**
+     * System property that, when true, outlines foreground regions on the
+     * output. Contour search allocates per frame, so it is off by default.
+     */
+    public static final String REGIONS_PROPERTY = "cv.recon.regions";
+    
+    /**
+     * Frame size the pipeline is warmed up at, the usual webcam size.
+     */
+    private static final int WARM_UP_WIDTH = 640;
+    private static final int WARM_UP_HEIGHT = 480;
+    
+    private Pipeline pipeline;
+    private MetricsPublisher metricsPublisher;
+    private SessionLog sessionLog;
+    private BackgroundModelType modelType;
+    private CounterType counterType;
+    private final AtomicReference<Frame> latestFrame = new AtomicReference<>();
+    private boolean firstFrameShown;
+    private boolean firstRepetitionCounted;
     
     /**
      * Called from Start button.
      * <p/>
-     * Start OpenCV video capture and update the display for input and output.
+     * Start OpenCV video capture pipeline and update the display for input and
+     * output.
      * @param event 
      */
     @FXML
     private void start(ActionEvent event) {
-        if (!vid.isOpened()) {
-            vid.open(0);
-
-            timer = new Timer();
-            timer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    vid.read(src);
-
-                    if (!src.empty()) {
-                        Platform.runLater(() -> {
-                            inputController.updateView(src);
-                        });
-                        Platform.runLater(() -> {
-                            outputController.updateView(src);
-                        });
-                    }
+        if (pipeline == null) {
+            FrameSource source;
+            try {
+                source = FrameSources.open(System.getProperty(SOURCE_PROPERTY, "0"), true);
+            } catch (IllegalArgumentException ex) {
+                Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            }
+            String record = System.getProperty(RECORD_PROPERTY);
+            if (record != null) {
+                source = FrameSources.record(source, Paths.get(record));
+            }
+            
+            SignalListener signalListener = this::plot;
+            String log = System.getProperty(LOG_PROPERTY);
+            if (log != null) {
+                try {
+                    sessionLog = new SessionLog(Paths.get(log));
+                    signalListener = signalListener.andThen(sessionLog);
+                } catch (IOException ex) {
+                    Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex);
                 }
-            }, 0L, 100L);
+            }
+            
+            pipeline = new Pipeline(source, this::render, signalListener);
+            pipeline.setRegionExtraction(Boolean.getBoolean(REGIONS_PROPERTY));
+            pipeline.setParallelMorphology(true);
+            pipeline.setRoiTracking(roiCheckBox.isSelected());
+            pipeline.setBackgroundModel(modelType);
+            pipeline.setCounter(counterType);
+            chartController.setStatistics(pipeline.getStatistics());
+            pipeline.start();
+            
+            metricsPublisher = new MetricsPublisher(pipeline);
+            metricsPublisher.start(Long.getLong(METRICS_LOG_PROPERTY, 0), TimeUnit.SECONDS);
+        }
+    }
+    
+    /**
+     * Render stage of the pipeline. Called from processing thread, hands the
+     * frame to the JavaFX thread through a single slot.
+     * <p/>
+     * Only the latest frame is kept. A frame still in the slot has not been
+     * displayed yet and is dropped, so the JavaFX thread never has more than
+     * one frame to catch up on, however fast frames are processed.
+     * @param frame Processed frame
+     */
+    private void render(Frame frame) {
+        Frame superseded = latestFrame.getAndSet(frame);
+        if (superseded != null) {
+            pipeline.drop(superseded);
+        }
+    }
+    
+    /**
+     * Called on JavaFX thread once per pulse. Display the latest frame, if a
+     * new one has arrived since the last pulse, give it back to the pipeline,
+     * and then redraw the chart.
+     */
+    private void pulse() {
+        Frame frame = latestFrame.getAndSet(null);
+        if (frame != null) {
+            long renderStart = System.nanoTime();
+            inputController.updateView(frame.getSource());
+            outputController.updateView(frame.getOutput(), frame.getNonZeroCount(),
+                    frame.getRegions());
+            
+            StageStatistics statistics = pipeline.getStatistics();
+            long now = statistics.recordSince(Stage.RENDER, renderStart);
+            statistics.record(Stage.END_TO_END, now - frame.getCaptureTime());
+            
+            pipeline.release(frame);
+            
+            if (!firstFrameShown) {
+                firstFrameShown = true;
+                MainApp.logStartup("First frame shown");
+            }
+        }
+        
+        chartController.refresh();
+    }
+    
+    /**
+     * Signal stage of the pipeline. Called from processing thread for every
+     * counted frame. The sample goes into the history of the chart, which is
+     * redrawn once per pulse.
+     * @param timestamp Capture timestamp in milliseconds
+     * @param value Non-zero pixel count
+     * @param midRange Mid range of the counter window
+     * @param count Repetition count
+     * @param repetition Whether this sample completed a repetition
+     */
+    private void plot(long timestamp, double value, double midRange, long count, boolean repetition) {
+        chartController.addSample(timestamp, value, midRange, count);
+        
+        if (repetition && !firstRepetitionCounted) {
+            firstRepetitionCounted = true;
+            MainApp.logStartup("First repetition counted");
         }
     }
     
@@ -92,8 +248,32 @@ public class RootLayoutController implements Initializable {
      */
     @FXML
     private void capture(ActionEvent event) {
-        chartController.startTimer();
-        outputController.startBackgroundSubtraction();
+        chartController.reset();
+        if (pipeline != null) {
+            pipeline.startBackgroundSubtraction();
+        }
+    }
+    
+    /**
+     * Called from 'Track ROI' check box. Takes effect on next capture.
+     * @param event 
+     */
+    @FXML
+    private void toggleRoi(ActionEvent event) {
+        if (pipeline != null) {
+            pipeline.setRoiTracking(roiCheckBox.isSelected());
+        }
+    }
+    
+    /**
+     * Called when a region of interest is dragged on the input display.
+     * @param roi Region in frame pixels
+     */
+    private void selectRegion(Rect roi) {
+        roiCheckBox.setSelected(true);
+        if (pipeline != null) {
+            pipeline.setRegionOfInterest(roi);
+        }
     }
     
     /**
@@ -110,45 +290,72 @@ public class RootLayoutController implements Initializable {
      * resources.
      */
     public void dispose() {
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+        if (pipeline != null) {
+            metricsPublisher.stop();
+            metricsPublisher = null;
+            chartController.setStatistics(null);
+            pipeline.stop();
+            
+            Frame frame = latestFrame.getAndSet(null);
+            if (frame != null) {
+                pipeline.drop(frame);
+            }
+            pipeline.dispose();
+            pipeline = null;
+        }
+        if (sessionLog != null) {
+            sessionLog.close();
+            sessionLog = null;
         }
-        if (vid.isOpened()) {
-            vid.release();
+    }
+    
+    /**
+     * Load a view. Safe to call off the JavaFX thread, as long as the view is
+     * not attached to a shown scene yet.
+     * @param name FXML file name in the view folder
+     * @return Loader holding the root and controller of the view
+     */
+    private static FXMLLoader loadView(String name) {
+        FXMLLoader loader = new FXMLLoader(RootLayoutController.class.getResource(MainApp.VIEW_DIR + name));
+        loader.setClassLoader(RootLayoutController.class.getClassLoader());
+        try {
+            loader.load();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
         }
-        chartController.stopTimer();
+        return loader;
     }
     
     /**
      * Initialize input display.
+     * @param view Input display being loaded
      */
-    private void initInputDisplay() {
+    private void initInputDisplay(CompletableFuture<FXMLLoader> view) {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource(MainApp.VIEW_DIR + "InputDisplay.fxml"));
-            Parent inputDisplay = loader.load();
+            FXMLLoader loader = view.join();
             
             inputController = loader.getController();
+            inputController.setOnRegionSelected(this::selectRegion);
             
-            inputBox.getChildren().setAll(inputDisplay);
-        } catch (IOException ex) {
-            Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex);
+            inputBox.getChildren().setAll((Parent) loader.getRoot());
+        } catch (CompletionException ex) {
+            Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex.getCause());
         }
     }
     
     /**
      * Initialize output display.
+     * @param view Output display being loaded
      */
-    private void initOutputDisplay() {
+    private void initOutputDisplay(CompletableFuture<FXMLLoader> view) {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource(MainApp.VIEW_DIR + "OutputDisplay.fxml"));
-            Parent outputDisplay = loader.load();
+            FXMLLoader loader = view.join();
             
             outputController = loader.getController();
             
-            outputBox.getChildren().setAll(outputDisplay);
-        } catch (IOException ex) {
-            Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex);
+            outputBox.getChildren().setAll((Parent) loader.getRoot());
+        } catch (CompletionException ex) {
+            Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex.getCause());
         }
     }
     
@@ -157,26 +364,87 @@ public class RootLayoutController implements Initializable {
      */
     private void initChart() {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource(MainApp.VIEW_DIR + "Chart.fxml"));
-            Parent chart = loader.load();
+            FXMLLoader loader = loadView("Chart.fxml");
             
             chartController = loader.getController();
-            chartController.setOutputController(outputController);
             
-            chartBox.getChildren().setAll(chart);
-        } catch (IOException ex) {
-            Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex);
+            chartBox.getChildren().setAll((Parent) loader.getRoot());
+        } catch (UncheckedIOException ex) {
+            Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex.getCause());
+        }
+    }
+    
+    /**
+     * Read a constant of an enum from a system property, written in lower
+     * case with dashes, such as mid-range.
+     * @param <E> Enum type
+     * @param property System property
+     * @param defaultValue Value if the property is unset or invalid
+     * @return Value of the property
+     */
+    private static <E extends Enum<E>> E parseProperty(String property, E defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(),
+                    value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException ex) {
+            Logger.getLogger(RootLayoutController.class.getName()).log(Level.WARNING,
+                    "Unknown {0} {1}, using {2}", new Object[]{property, value, defaultValue});
+            return defaultValue;
         }
     }
     
+    /**
+     * Load the views in parallel and warm up the pipeline meanwhile.
+     * <p/>
+     * The input and output displays hold Mats, so they are loaded on startup
+     * threads once the OpenCV library is loaded. The chart needs no OpenCV
+     * and is loaded on the JavaFX thread in the meantime, as charts start
+     * animations. Warm-up runs the first frames of the background model and
+     * morphology and finishes in the background, usually before Start is
+     * pressed.
+     * @param url
+     * @param rb 
+     */
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        vid = new VideoCapture();
-        src = new Mat();
+        ExecutorService startup = Executors.newFixedThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        CompletableFuture<Void> library = NativeLoader.loadAsync();
+        CompletableFuture<FXMLLoader> inputView = library.thenApplyAsync(
+                ignored -> loadView("InputDisplay.fxml"), startup);
+        CompletableFuture<FXMLLoader> outputView = library.thenApplyAsync(
+                ignored -> loadView("OutputDisplay.fxml"), startup);
+        modelType = parseProperty(MODEL_PROPERTY, BackgroundModelType.MOG2);
+        counterType = parseProperty(COUNTER_PROPERTY, CounterType.MID_RANGE);
+        library.thenRunAsync(() -> ForegroundExtractor.warmUp(modelType, WARM_UP_WIDTH, WARM_UP_HEIGHT), startup)
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        Logger.getLogger(RootLayoutController.class.getName()).log(Level.SEVERE, null, ex);
+                    } else {
+                        MainApp.logStartup("Pipeline warmed up");
+                    }
+                });
         
-        initInputDisplay();
-        initOutputDisplay();
         initChart();
+        initInputDisplay(inputView);
+        initOutputDisplay(outputView);
+        startup.shutdown();
+        MainApp.logStartup("Views loaded");
+        
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                pulse();
+            }
+        }.start();
     }
     
     /**
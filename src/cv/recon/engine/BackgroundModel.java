@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import org.opencv.core.Mat;
+
+/**
+ * Per-pixel model of the background, classifying each pixel of a frame as
+ * foreground or background.
+ * <p/>
+ * A model learns from the frames it is given and is bound to their size; a
+ * new model is made when the frame size or the region changes. Frames are
+ * 8-bit with any number of channels.
+ *
+ * @author Burhanuddin
+ */
+public interface BackgroundModel {
+    
+    /**
+     * Classify pixels of a frame and update the model with it. The first
+     * frame only initializes the model.
+     * @param frame Frame, may be a submat
+     * @param mask CV_8UC1 Mat of the frame size, may be a submat, set to 255
+     * for foreground and 0 for background
+     */
+    void apply(Mat frame, Mat mask);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Kind of BackgroundModel, from most accurate to cheapest.
+ *
+ * @author Burhanuddin
+ */
+public enum BackgroundModelType {
+    
+    /** Gaussian mixture per pixel, see Mog2Model. */
+    MOG2,
+    
+    /** Running average per pixel, see RunningAverageModel. */
+    RUNNING_AVERAGE,
+    
+    /** Difference with the previous frame, see FrameDifferenceModel. */
+    FRAME_DIFFERENCE;
+    
+    /**
+     * Construct a model of this kind with default settings.
+     * @return New model
+     */
+    public BackgroundModel create() {
+        switch (this) {
+            case RUNNING_AVERAGE:
+                return new RunningAverageModel();
+            case FRAME_DIFFERENCE:
+                return new FrameDifferenceModel();
+            default:
+                return new Mog2Model();
+        }
+    }
+}
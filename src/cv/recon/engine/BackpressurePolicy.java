@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * What the capture stage does when processing cannot keep up.
+ *
+ * @author Burhanuddin
+ */
+public enum BackpressurePolicy {
+    
+    /**
+     * Wait for a free frame. Nothing is dropped, so latency grows without
+     * bound on a live source. Suits recordings that must be processed fully.
+     */
+    BLOCK,
+    
+    /**
+     * Overwrite the oldest queued frame when the ring is full. Absorbs short
+     * spikes, drops only under sustained load.
+     */
+    DROP_OLDEST,
+    
+    /**
+     * Keep only the newest queued frame, so processing always works on the
+     * most recent frame with at most one frame of queueing delay.
+     */
+    KEEP_LATEST,
+    
+    /**
+     * Decode only every Nth frame and skip the rest without decoding, cutting
+     * both decode and processing cost by N.
+     */
+    EVERY_NTH,
+    
+    /**
+     * Pick one of the above from measured latency, see LoadShedder.
+     */
+    AUTO
+}
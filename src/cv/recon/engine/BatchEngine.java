@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.AllocationCounter;
+import cv.recon.util.JpegEncoder;
+import cv.recon.util.MatPool;
+import cv.recon.util.ParallelMorphology;
+import org.opencv.core.Mat;
+
+/**
+ * Run the counting pipeline over a frame source as fast as frames can be read,
+ * without JavaFX and without wall-clock pacing.
+ *
+ * @author Burhanuddin
+ */
+public class BatchEngine {
+    
+    private final MatPool pool;
+    private final ForegroundExtractor extractor;
+    private RepetitionCounter counter;
+    private ParallelMorphology morphology;
+    private final FrameFeatures features;
+    private Signal signal = Signal.COUNT;
+    private SignalListener signalListener;
+    private JpegEncoder encoder;
+    private final Mat output;
+    
+    /**
+     * Construct batch engine with default extractor and counter.
+     */
+    public BatchEngine() {
+        pool = MatPool.getShared();
+        extractor = new ForegroundExtractor(pool);
+        counter = new MidRangeCounter();
+        features = new FrameFeatures();
+        output = new Mat();
+    }
+    
+    /**
+     * Set feature of the foreground mask to count repetition on. Features are
+     * only computed when counting on something other than COUNT.
+     * @param signal Repetition signal, COUNT by default
+     */
+    public void setSignal(Signal signal) {
+        this.signal = signal;
+    }
+    
+    /**
+     * Process frames at a fixed fraction of their size. Takes effect on next
+     * run.
+     * @param scale Scale of width and height, for example 0.5 or 0.25
+     */
+    public void setProcessingScale(double scale) {
+        extractor.setProcessingScale(scale);
+    }
+    
+    /**
+     * Process frames at the largest size within a number of pixels. Takes
+     * effect on next run.
+     * @param pixels Pixel budget, 0 to use the processing scale instead
+     */
+    public void setPixelBudget(long pixels) {
+        extractor.setPixelBudget(pixels);
+    }
+    
+    /**
+     * Set kind of background model. Takes effect on next run.
+     * @param modelType Kind of background model, MOG2 by default
+     */
+    public void setBackgroundModel(BackgroundModelType modelType) {
+        extractor.setBackgroundModel(modelType);
+    }
+    
+    /**
+     * Set how repetition is counted. Takes effect on next run.
+     * @param counterType Kind of counter, MID_RANGE by default
+     */
+    public void setCounter(CounterType counterType) {
+        counter = counterType.create();
+    }
+    
+    /**
+     * Set receiver of the repetition signal, called from the running thread.
+     * @param signalListener Signal listener, may be null
+     */
+    public void setSignalListener(SignalListener signalListener) {
+        this.signalListener = signalListener;
+    }
+    
+    /**
+     * Set encoder of the processed output. The output is only produced for
+     * frames the encoder is due for.
+     * @param encoder Output encoder, may be null
+     */
+    public void setEncoder(JpegEncoder encoder) {
+        this.encoder = encoder;
+    }
+    
+    /**
+     * Run erode and dilate in parallel strips on the common ForkJoinPool, so
+     * a single source uses every core.
+     * @param parallelMorphology Whether to use every core for morphology
+     */
+    public void setParallelMorphology(boolean parallelMorphology) {
+        if (parallelMorphology && morphology == null) {
+            morphology = new ParallelMorphology();
+        }
+        extractor.setParallelMorphology(parallelMorphology ? morphology : null);
+    }
+    
+    /**
+     * Restrict processing to a region of interest learned from the foreground.
+     * Takes effect on next run.
+     * @param roiTracking Whether to track a region of interest
+     */
+    public void setRoiTracking(boolean roiTracking) {
+        extractor.setRoiTracking(roiTracking);
+    }
+    
+    /**
+     * Process every frame of the source, using the first frame as background
+     * frame.
+     * <p/>
+     * Latency is measured per frame from the end of reading to the end of
+     * counting, so it excludes decoding. Frames per second includes decoding.
+     * Allocations are counted over the same section once the first
+     * Pipeline.WARM_UP_FRAMES frames have passed.
+     * @param source Frame source, not closed by this method
+     * @return Result of the run
+     */
+    public BatchResult run(FrameSource source) {
+        Mat src = new Mat();
+        long frames = 0;
+        long totalLatency = 0;
+        long maxLatency = 0;
+        long allocatedBytes = 0;
+        long nativeAllocations = 0;
+        
+        extractor.start();
+        counter.reset();
+        
+        long startTime = System.nanoTime();
+        while (source.read(src)) {
+            long allocationStart = AllocationCounter.getAllocatedBytes();
+            long nativeStart = pool.getAllocationCount();
+            long frameStart = System.nanoTime();
+            
+            Mat encoded = encoder != null && encoder.isDue() ? output : null;
+            double value;
+            if (signal == Signal.COUNT) {
+                value = extractor.apply(src, encoded);
+            } else {
+                extractor.apply(src, encoded, features);
+                value = features.get(signal);
+            }
+            boolean repetition = counter.addSample(source.getTimestamp(), value);
+            if (signalListener != null) {
+                signalListener.sampleAdded(source.getTimestamp(), value,
+                        counter.getMidRange(), counter.getCount(), repetition);
+            }
+            if (encoded != null) {
+                encoder.offer(encoded);
+            }
+            
+            long latency = System.nanoTime() - frameStart;
+            if (frames >= Pipeline.WARM_UP_FRAMES) {
+                allocatedBytes += AllocationCounter.since(allocationStart);
+                nativeAllocations += pool.getAllocationCount() - nativeStart;
+            }
+            totalLatency += latency;
+            if (latency > maxLatency) {
+                maxLatency = latency;
+            }
+            frames++;
+        }
+        long elapsedTime = System.nanoTime() - startTime;
+        
+        src.release();
+        
+        return new BatchResult(frames, counter.getCount(), elapsedTime, totalLatency, maxLatency,
+                allocatedBytes, nativeAllocations);
+    }
+    
+    /**
+     * Release native memory held by this engine.
+     */
+    public void release() {
+        extractor.release();
+        output.release();
+        if (morphology != null) {
+            morphology.release();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import java.util.Locale;
+
+/**
+ * Result of running a frame source through BatchEngine.
+ *
+ * @author Burhanuddin
+ */
+public class BatchResult {
+    
+    private final long frames;
+    private final long count;
+    private final long elapsedTime;
+    private final long totalLatency;
+    private final long maxLatency;
+    private final long allocatedBytes;
+    private final long nativeAllocations;
+    
+    /**
+     * Construct batch result.
+     * @param frames Number of frames processed
+     * @param count Repetition count
+     * @param elapsedTime Wall-clock time of the run in nanoseconds
+     * @param totalLatency Sum of per-frame latency in nanoseconds
+     * @param maxLatency Maximum per-frame latency in nanoseconds
+     * @param allocatedBytes Java heap bytes allocated after warm-up
+     * @param nativeAllocations Native buffers allocated after warm-up
+     */
+    public BatchResult(long frames, long count, long elapsedTime, long totalLatency, long maxLatency,
+            long allocatedBytes, long nativeAllocations) {
+        this.frames = frames;
+        this.count = count;
+        this.elapsedTime = elapsedTime;
+        this.totalLatency = totalLatency;
+        this.maxLatency = maxLatency;
+        this.allocatedBytes = allocatedBytes;
+        this.nativeAllocations = nativeAllocations;
+    }
+    
+    public long getFrames() {
+        return frames;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Return throughput of the run.
+     * @return Frames per second
+     */
+    public double getFramesPerSecond() {
+        if (elapsedTime == 0) {
+            return 0.0;
+        }
+        return frames * 1e9 / elapsedTime;
+    }
+    
+    /**
+     * Return mean per-frame latency.
+     * @return Mean latency in milliseconds
+     */
+    public double getMeanLatency() {
+        if (frames == 0) {
+            return 0.0;
+        }
+        return totalLatency / 1e6 / frames;
+    }
+    
+    /**
+     * Return maximum per-frame latency.
+     * @return Maximum latency in milliseconds
+     */
+    public double getMaxLatency() {
+        return maxLatency / 1e6;
+    }
+    
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+    
+    public long getNativeAllocations() {
+        return nativeAllocations;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "count=%d frames=%d fps=%.1f latency mean=%.3f ms max=%.3f ms allocated=%d B native=%d",
+                count, frames, getFramesPerSecond(), getMeanLatency(), getMaxLatency(),
+                allocatedBytes, nativeAllocations);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Kind of RepetitionCounter.
+ *
+ * @author Burhanuddin
+ */
+public enum CounterType {
+    
+    /** Count crossings of the mid range, see MidRangeCounter. */
+    MID_RANGE,
+    
+    /** Count crossings paced by the dominant period, see PeriodicityCounter. */
+    PERIODICITY;
+    
+    /**
+     * Construct a counter of this kind with default settings.
+     * @return New counter
+     */
+    public RepetitionCounter create() {
+        switch (this) {
+            case PERIODICITY:
+                return new PeriodicityCounter();
+            default:
+                return new MidRangeCounter();
+        }
+    }
+}
@@ -0,0 +1,622 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.MatPool;
+import cv.recon.util.ParallelMorphology;
+import cv.recon.util.SubmatCache;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Extract foreground from frames using a BackgroundModel, MOG2 by default.
+ * <p/>
+ * The foreground mask is cleaned with erode and dilate, and its non-zero pixel
+ * count is the signal used for counting repetition. Has no dependency on
+ * JavaFX so it can run both behind the views and headless.
+ * <p/>
+ * Buffers are drawn from a MatPool when the frame size changes, so apply does
+ * not allocate once it has seen the first frame.
+ * <p/>
+ * With ROI tracking, the per-pixel stages only run inside a region of
+ * interest given by a RoiTracker, either drawn by the user or learned from
+ * the foreground of the first frames. Models are per pixel, so when
+ * the region moves a new model is made for it and seeded with the region of
+ * the background frame kept from start. Outside the region the mask stays
+ * empty. Submat headers are cached so this mode does not allocate per frame
+ * either, except when the region moves.
+ * <p/>
+ * Counting only needs a coarse motion signal, so frames can be processed at
+ * a lower resolution, given either as a scale or as a pixel budget. The
+ * kernel shrinks with the frame and non-zero counts are scaled back to full
+ * resolution, so the signal keeps its range. The foreground mask is upscaled
+ * only when the output or the mask is asked for, and the output keeps the
+ * resolution of the source. ROI tracking then works in processing pixels.
+ *
+ * @author Burhanuddin
+ */
+public class ForegroundExtractor {
+    
+    private static final Scalar ZERO = new Scalar(0);
+    private static final int SUBMAT_CACHE_SIZE = 16;
+    private static final int KERNEL_SIZE = 10;
+    private static final int WARM_UP_RUNS = 5;
+    
+    private final MatPool pool;
+    private BackgroundModel model;
+    private BackgroundModelType modelType = BackgroundModelType.MOG2;
+    private BackgroundModelType requestedModelType = BackgroundModelType.MOG2;
+    private Mat fgMask;
+    private Mat blank;
+    private Mat kernel;
+    private int kernelSize;
+    private boolean isFirstFrame;
+    
+    private double requestedScale = 1;
+    private long requestedBudget;
+    private double scale = 1;
+    private long pixelBudget;
+    private boolean scaled;
+    private Mat scaledSrc;
+    private Mat fullMask;
+    private Size scaledSize;
+    private Size fullSize;
+    private double countScale = 1;
+    private boolean fullMaskStale;
+    
+    private final RoiTracker tracker;
+    private final SubmatCache srcViews;
+    private final SubmatCache outputViews;
+    private final Mat colMax;
+    private final Mat rowMax;
+    private byte[] reduced;
+    private boolean roiRequested;
+    private boolean roiTracking;
+    private Rect roi;
+    private Mat fgMaskRoi;
+    private Mat maskBlank;
+    private Mat background;
+    private Rect userRoi;
+    private StageStatistics statistics;
+    private ParallelMorphology morphology;
+    private final MaskAnalyzer analyzer;
+    
+    /**
+     * Construct foreground extractor with a 10x10 elliptical kernel at full
+     * resolution, drawing buffers from the shared pool.
+     */
+    public ForegroundExtractor() {
+        this(MatPool.getShared());
+    }
+    
+    /**
+     * Construct foreground extractor with a 10x10 elliptical kernel at full
+     * resolution.
+     * @param pool Pool to draw buffers from
+     */
+    public ForegroundExtractor(MatPool pool) {
+        this.pool = pool;
+        kernelSize = KERNEL_SIZE;
+        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(kernelSize, kernelSize));
+        
+        tracker = new RoiTracker();
+        srcViews = new SubmatCache(SUBMAT_CACHE_SIZE);
+        outputViews = new SubmatCache(SUBMAT_CACHE_SIZE);
+        colMax = new Mat();
+        rowMax = new Mat();
+        reduced = new byte[0];
+        analyzer = new MaskAnalyzer();
+    }
+    
+    /**
+     * Start background subtraction using next frame as background frame.
+     */
+    public void start() {
+        modelType = requestedModelType;
+        model = modelType.create();
+        isFirstFrame = true;
+        
+        scale = requestedScale;
+        pixelBudget = requestedBudget;
+        roiTracking = roiRequested;
+        resetRoi();
+        tracker.restart();
+    }
+    
+    /**
+     * Set kind of background model. Takes effect on next start.
+     * @param modelType Kind of background model, MOG2 by default
+     */
+    public void setBackgroundModel(BackgroundModelType modelType) {
+        requestedModelType = modelType;
+    }
+    
+    /**
+     * Process frames at a fixed fraction of their size. Takes effect on next
+     * start.
+     * @param scale Scale of width and height, for example 0.5 or 0.25
+     */
+    public void setProcessingScale(double scale) {
+        if (scale <= 0 || scale > 1) {
+            throw new IllegalArgumentException("Processing scale must be in (0, 1]: " + scale);
+        }
+        requestedScale = scale;
+        requestedBudget = 0;
+    }
+    
+    /**
+     * Process frames at the largest size within a number of pixels, keeping
+     * the aspect ratio. Frames that fit are not scaled. Takes effect on next
+     * start.
+     * @param pixels Pixel budget, 0 to use the processing scale instead
+     */
+    public void setPixelBudget(long pixels) {
+        if (pixels < 0) {
+            throw new IllegalArgumentException("Pixel budget must not be negative: " + pixels);
+        }
+        requestedBudget = pixels;
+    }
+    
+    /**
+     * Return scale frames are actually processed at, known after the first
+     * frame.
+     * @return Ratio of processed to source width
+     */
+    public double getScale() {
+        if (fgMask == null) {
+            return 1;
+        }
+        return (double) fgMask.cols() / blank.cols();
+    }
+    
+    /**
+     * Enable or disable ROI tracking. Takes effect on next start.
+     * @param roiTracking Whether to restrict processing to a tracked region
+     */
+    public void setRoiTracking(boolean roiTracking) {
+        roiRequested = roiTracking;
+    }
+    
+    /**
+     * Restrict processing to a user drawn region, which is then tracked like
+     * a learned one. Enables ROI tracking, immediately if already started.
+     * @param x Left in frame pixels
+     * @param y Top in frame pixels
+     * @param width Width in frame pixels
+     * @param height Height in frame pixels
+     */
+    public void setRegionOfInterest(int x, int y, int width, int height) {
+        roiRequested = true;
+        roiTracking = true;
+        userRoi = new Rect(x, y, width, height);
+        
+        if (fgMask != null) {
+            setTrackerRegion();
+            if (model != null && !isFirstFrame && tracker.isLocked()) {
+                relocate();
+            }
+        }
+    }
+    
+    /**
+     * Hand user drawn region to the tracker in processing pixels.
+     */
+    private void setTrackerRegion() {
+        double s = getScale();
+        tracker.set((int) Math.round(userRoi.x * s), (int) Math.round(userRoi.y * s),
+                (int) Math.round(userRoi.width * s), (int) Math.round(userRoi.height * s));
+    }
+    
+    /**
+     * Return current region of interest.
+     * @return Region in processing pixels, null when processing the full
+     * frame
+     */
+    public Rect getRegionOfInterest() {
+        return roi;
+    }
+    
+    /**
+     * Check if background subtraction has been started.
+     * @return A boolean stating whether background subtraction is started
+     */
+    public boolean isStarted() {
+        return model != null;
+    }
+    
+    /**
+     * Subtract background from a frame.
+     * @param src Source Mat
+     * @param output Optional output Mat, if non-null, the foreground of source
+     * Mat is copied here
+     * @return Non-zero pixel count of foreground mask, always 0 for the first
+     * frame and when background subtraction is not started
+     */
+    public int apply(Mat src, Mat output) {
+        return apply(src, output, null);
+    }
+    
+    /**
+     * Subtract background from a frame and analyze its foreground mask.
+     * <p/>
+     * With features, count, centroid, bounding box and moments all come from
+     * one pass of a MaskAnalyzer over the mask, which replaces countNonZero
+     * and, with ROI tracking, the bounding box search of the tracker.
+     * @param src Source Mat
+     * @param output Optional output Mat, if non-null, the foreground of source
+     * Mat is copied here
+     * @param features Optional record to fill with features of the foreground
+     * mask, cleared like the count
+     * @return Non-zero pixel count of foreground mask, always 0 for the first
+     * frame and when background subtraction is not started
+     */
+    public int apply(Mat src, Mat output, FrameFeatures features) {
+        if (model == null) {
+            if (features != null) {
+                features.clear();
+            }
+            return 0;
+        }
+        
+        long time = statistics != null ? System.nanoTime() : 0;
+        prepareBuffers(src);
+        
+        Mat frame = src;
+        if (scaled) {
+            Imgproc.resize(src, scaledSrc, scaledSize, 0, 0, Imgproc.INTER_AREA);
+            frame = scaledSrc;
+        }
+        
+        if (roiTracking && isFirstFrame) {
+            if (background == null) {
+                background = pool.acquire(frame);
+            }
+            frame.copyTo(background);
+        } else if (roiTracking && roi == null && tracker.isLocked()) {
+            relocate();
+        }
+        
+        Mat in = frame;
+        Mat mask = fgMask;
+        if (roi != null) {
+            in = srcViews.get(frame);
+            mask = fgMaskRoi;
+        }
+        
+        model.apply(in, mask);
+        time = mark(Stage.SUBTRACTION, time);
+
+        if (morphology != null) {
+            morphology.open(mask, mask, kernel);
+        } else {
+            Imgproc.erode(mask, mask, kernel);
+            Imgproc.dilate(mask, mask, kernel);
+        }
+        fullMaskStale = scaled;
+        time = mark(Stage.MORPHOLOGY, time);
+
+        if (output != null) {
+            blank.copyTo(output);
+            if (scaled) {
+                src.copyTo(output, getForegroundMask());
+            } else {
+                in.copyTo(roi != null ? outputViews.get(output) : output, mask);
+            }
+            time = mark(Stage.OUTPUT, time);
+        }
+
+        int count = 0;
+        if (features != null) {
+            int offsetX = roi != null ? roi.x : 0;
+            int offsetY = roi != null ? roi.y : 0;
+            analyzer.analyze(mask, features, offsetX, offsetY,
+                    (double) fgMask.cols() / blank.cols(), (double) fgMask.rows() / blank.rows());
+            if (isFirstFrame) {
+                features.clear();
+            }
+            count = features.getCount();
+        } else if (!isFirstFrame) {
+            count = (int) Math.round(Core.countNonZero(mask) * countScale);
+        }
+        isFirstFrame = false;
+        
+        if (roiTracking) {
+            if (features != null) {
+                updateTracker(analyzer.getLeft(), analyzer.getTop(),
+                        analyzer.getRight(), analyzer.getBottom());
+            } else {
+                track(mask);
+            }
+        }
+        mark(Stage.COUNT, time);
+        return count;
+    }
+    
+    /**
+     * Run a few synthetic frames through a throwaway extractor with parallel
+     * morphology and mask analysis, so the first apply of the model, the
+     * first morphology pass and their one-time native setup are paid before
+     * the first real frame. Buffers go back to the shared pool, where a
+     * source of the same size finds them.
+     * @param modelType Kind of background model to warm up
+     * @param width Frame width
+     * @param height Frame height
+     */
+    public static void warmUp(BackgroundModelType modelType, int width, int height) {
+        ForegroundExtractor extractor = new ForegroundExtractor();
+        ParallelMorphology morphology = new ParallelMorphology();
+        extractor.setBackgroundModel(modelType);
+        extractor.setParallelMorphology(morphology);
+        extractor.start();
+        
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        Mat output = new Mat();
+        FrameFeatures features = new FrameFeatures();
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            frame.setTo(ZERO);
+            int top = height * i / (2 * WARM_UP_RUNS);
+            Core.rectangle(frame, new Point(width / 3, top), new Point(width * 2 / 3, top + height / 2),
+                    Scalar.all(255), -1);
+            extractor.apply(frame, output, features);
+        }
+        
+        extractor.release();
+        morphology.release();
+        frame.release();
+        output.release();
+    }
+    
+    /**
+     * Record latency of a step if statistics are collected.
+     * @param stage Step that has just finished
+     * @param start Start time of the step
+     * @return Start time of the next step
+     */
+    private long mark(Stage stage, long start) {
+        if (statistics == null) {
+            return 0;
+        }
+        return statistics.recordSince(stage, start);
+    }
+    
+    /**
+     * Run erode and dilate in parallel strips, with the same result as the
+     * sequential path. Worth it when a single high resolution stream runs
+     * alone.
+     * @param morphology Parallel morphology, null to run on the calling thread
+     */
+    public void setParallelMorphology(ParallelMorphology morphology) {
+        this.morphology = morphology;
+    }
+    
+    /**
+     * Record latency of every step of apply.
+     * @param statistics Statistics to record into, null to stop recording
+     */
+    public void setStatistics(StageStatistics statistics) {
+        this.statistics = statistics;
+    }
+    
+    /**
+     * Feed bounding box of the foreground to the tracker, and move the region
+     * if the tracker asks to. The bounding box is found from the maximum of
+     * every column and every row of the mask.
+     * @param mask Mask of the current region
+     */
+    private void track(Mat mask) {
+        Core.reduce(mask, colMax, 0, Core.REDUCE_MAX);
+        int cols = read(colMax);
+        int left = 0;
+        while (left < cols && reduced[left] == 0) {
+            left++;
+        }
+        int right = cols;
+        while (right > left && reduced[right - 1] == 0) {
+            right--;
+        }
+        
+        Core.reduce(mask, rowMax, 1, Core.REDUCE_MAX);
+        int rows = read(rowMax);
+        int top = 0;
+        while (top < rows && reduced[top] == 0) {
+            top++;
+        }
+        int bottom = rows;
+        while (bottom > top && reduced[bottom - 1] == 0) {
+            bottom--;
+        }
+        
+        updateTracker(left, top, right, bottom);
+    }
+    
+    /**
+     * Feed bounding box of the foreground to the tracker, and move the region
+     * if the tracker asks to.
+     * @param left Left of the bounding box in mask pixels
+     * @param top Top of the bounding box in mask pixels
+     * @param right Right of the bounding box in mask pixels, exclusive
+     * @param bottom Bottom of the bounding box in mask pixels, exclusive
+     */
+    private void updateTracker(int left, int top, int right, int bottom) {
+        int offsetX = roi != null ? roi.x : 0;
+        int offsetY = roi != null ? roi.y : 0;
+        if (tracker.update(offsetX + left, offsetY + top, right - left, bottom - top)) {
+            relocate();
+        }
+    }
+    
+    /**
+     * Read a single row or column Mat into the reduced buffer.
+     * @param vector Mat with one row or one column
+     * @return Number of elements read
+     */
+    private int read(Mat vector) {
+        int length = (int) vector.total();
+        if (reduced.length < length) {
+            reduced = new byte[length];
+        }
+        vector.get(0, 0, reduced);
+        return length;
+    }
+    
+    /**
+     * Move processing to the region of the tracker with a new background
+     * model, seeded with the background frame if there is one.
+     */
+    private void relocate() {
+        resetRoi();
+        roi = new Rect(tracker.getX(), tracker.getY(), tracker.getWidth(), tracker.getHeight());
+        srcViews.setRect(roi);
+        outputViews.setRect(roi);
+        fgMaskRoi = fgMask.submat(roi);
+        
+        model = modelType.create();
+        if (background != null) {
+            Mat seed = background.submat(roi);
+            model.apply(seed, fgMaskRoi);
+            seed.release();
+        } else {
+            isFirstFrame = true;
+        }
+        maskBlank.copyTo(fgMask);
+    }
+    
+    /**
+     * Go back to processing the full frame.
+     */
+    private void resetRoi() {
+        srcViews.clear();
+        outputViews.clear();
+        if (fgMaskRoi != null) {
+            fgMaskRoi.release();
+            fgMaskRoi = null;
+        }
+        roi = null;
+    }
+    
+    /**
+     * Swap buffers for ones matching the source Mat if its size or type, or
+     * the processing size, has changed.
+     * <p/>
+     * Output is cleared by copying from a blank Mat, as Mat.setTo allocates a
+     * new Mat header on every call.
+     * @param src Source Mat
+     */
+    private void prepareBuffers(Mat src) {
+        int rows = src.rows();
+        int cols = src.cols();
+        double s = scale;
+        if (pixelBudget > 0) {
+            s = Math.min(1, Math.sqrt((double) pixelBudget / ((long) rows * cols)));
+        }
+        int processedRows = Math.max(1, (int) Math.round(rows * s));
+        int processedCols = Math.max(1, (int) Math.round(cols * s));
+        
+        if (blank != null
+                && blank.rows() == rows
+                && blank.cols() == cols
+                && blank.type() == src.type()
+                && fgMask.rows() == processedRows
+                && fgMask.cols() == processedCols) {
+            return;
+        }
+        
+        resetRoi();
+        pool.release(fgMask);
+        pool.release(blank);
+        pool.release(maskBlank);
+        pool.release(background);
+        pool.release(scaledSrc);
+        pool.release(fullMask);
+        background = null;
+        scaledSrc = null;
+        fullMask = null;
+        
+        scaled = processedRows != rows || processedCols != cols;
+        fgMask = pool.acquire(processedRows, processedCols, CvType.CV_8UC1);
+        blank = pool.acquire(src);
+        blank.setTo(ZERO);
+        maskBlank = pool.acquire(fgMask);
+        maskBlank.setTo(ZERO);
+        if (scaled) {
+            scaledSrc = pool.acquire(processedRows, processedCols, src.type());
+            fullMask = pool.acquire(rows, cols, CvType.CV_8UC1);
+            scaledSize = new Size(processedCols, processedRows);
+            fullSize = new Size(cols, rows);
+        }
+        countScale = (double) rows * cols / ((double) processedRows * processedCols);
+        
+        int size = Math.max(1, (int) Math.round(KERNEL_SIZE * (double) processedCols / cols));
+        if (size != kernelSize) {
+            kernel.release();
+            kernelSize = size;
+            kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(size, size));
+        }
+        
+        tracker.setFrameSize(processedCols, processedRows);
+        if (userRoi != null) {
+            setTrackerRegion();
+        }
+    }
+    
+    /**
+     * Return foreground mask of the last frame at source resolution, upscaling
+     * it first if frames are processed at a lower resolution.
+     * @return Foreground mask, null if no frame has been applied
+     */
+    public Mat getForegroundMask() {
+        if (!scaled) {
+            return fgMask;
+        }
+        if (fullMaskStale) {
+            Imgproc.resize(fgMask, fullMask, fullSize, 0, 0, Imgproc.INTER_NEAREST);
+            fullMaskStale = false;
+        }
+        return fullMask;
+    }
+    
+    /**
+     * Give buffers back to the pool and release the kernel.
+     */
+    public void release() {
+        resetRoi();
+        pool.release(fgMask);
+        pool.release(blank);
+        pool.release(maskBlank);
+        pool.release(background);
+        pool.release(scaledSrc);
+        pool.release(fullMask);
+        fgMask = null;
+        blank = null;
+        maskBlank = null;
+        background = null;
+        scaledSrc = null;
+        fullMask = null;
+        scaled = false;
+        
+        kernel.release();
+        colMax.release();
+        rowMax.release();
+        model = null;
+    }
+}
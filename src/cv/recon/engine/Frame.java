@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.MatPool;
+import cv.recon.util.RegionSet;
+import org.opencv.core.Mat;
+
+/**
+ * A slot in a FrameRing holding a source frame, its processed output and the
+ * values computed from it.
+ * <p/>
+ * Mats are allocated once with the slot and reused for every frame passing
+ * through it. Only the stage that currently owns the frame may touch it.
+ *
+ * @author Burhanuddin
+ */
+public class Frame {
+    
+    private Mat src;
+    private Mat output;
+    private long timestamp;
+    private long sequence;
+    private long captureTime;
+    private int nonZeroCount;
+    private final RegionSet regions = new RegionSet();
+    private final FrameFeatures features = new FrameFeatures();
+    
+    /**
+     * Construct frame with empty Mats.
+     */
+    public Frame() {
+        src = new Mat();
+        output = new Mat();
+    }
+    
+    /**
+     * Exchange source Mat with another frame, handing over the pixels without
+     * copying. Timestamp, sequence and capture time go along with the source.
+     * @param other Frame to exchange source with
+     */
+    void swapSource(Frame other) {
+        Mat tmp = src;
+        src = other.src;
+        other.src = tmp;
+        
+        timestamp = other.timestamp;
+        sequence = other.sequence;
+        captureTime = other.captureTime;
+    }
+    
+    /**
+     * Make sure output Mat has the size and type of the source Mat, drawing a
+     * new one from the pool if it does not.
+     * @param pool Pool to draw output from
+     */
+    void prepareOutput(MatPool pool) {
+        if (output.rows() == src.rows()
+                && output.cols() == src.cols()
+                && output.type() == src.type()) {
+            return;
+        }
+        
+        pool.release(output);
+        output = pool.acquire(src);
+    }
+    
+    public Mat getSource() {
+        return src;
+    }
+    
+    public Mat getOutput() {
+        return output;
+    }
+    
+    /**
+     * @return Capture timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+    
+    /**
+     * @return Sequence number of the frame since capture started
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+    
+    /**
+     * @return System.nanoTime when the frame was captured, for measuring
+     * latency
+     */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+    
+    public void setCaptureTime(long captureTime) {
+        this.captureTime = captureTime;
+    }
+    
+    public int getNonZeroCount() {
+        return nonZeroCount;
+    }
+    
+    public void setNonZeroCount(int nonZeroCount) {
+        this.nonZeroCount = nonZeroCount;
+    }
+    
+    /**
+     * @return Merged foreground regions, empty unless region extraction is
+     * enabled
+     */
+    public RegionSet getRegions() {
+        return regions;
+    }
+    
+    /**
+     * @return Features of the foreground mask, all 0 until background
+     * subtraction is started
+     */
+    public FrameFeatures getFeatures() {
+        return features;
+    }
+    
+    /**
+     * Give output back to the pool and free the source, which the frame
+     * source allocated rather than the pool. The frame must not be used
+     * afterwards.
+     * @param pool Pool to give Mats to
+     */
+    void dispose(MatPool pool) {
+        src.release();
+        pool.release(output);
+        src = new Mat();
+        output = new Mat();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Background model that is just the previous frame, in pure Java on
+ * primitive arrays.
+ * <p/>
+ * A pixel is foreground when any channel differs from the previous frame by
+ * more than the threshold, so only moving edges of the subject show up and a
+ * subject standing still vanishes. That is enough to count repetition, which
+ * is movement. The cheapest model: one copy of the frame into Java, a
+ * subtraction and comparison per channel, and one copy of the mask back,
+ * with no learning.
+ *
+ * @author Burhanuddin
+ */
+public class FrameDifferenceModel implements BackgroundModel {
+    
+    public static final int DEFAULT_THRESHOLD = 25;
+    
+    private final int threshold;
+    private byte[] pixels = new byte[0];
+    private byte[] previous = new byte[0];
+    private byte[] maskPixels = new byte[0];
+    
+    /**
+     * Construct model with DEFAULT_THRESHOLD.
+     */
+    public FrameDifferenceModel() {
+        this(DEFAULT_THRESHOLD);
+    }
+    
+    /**
+     * Construct model.
+     * @param threshold Least difference of a foreground pixel, 0 to 255
+     */
+    public FrameDifferenceModel(int threshold) {
+        this.threshold = threshold;
+    }
+    
+    @Override
+    public void apply(Mat frame, Mat mask) {
+        int channels = frame.channels();
+        int count = frame.rows() * frame.cols();
+        int length = count * channels;
+        mask.create(frame.rows(), frame.cols(), CvType.CV_8UC1);
+        
+        if (previous.length != length) {
+            pixels = new byte[length];
+            previous = new byte[length];
+            maskPixels = new byte[count];
+            frame.get(0, 0, previous);
+            mask.put(0, 0, maskPixels);
+            return;
+        }
+        
+        frame.get(0, 0, pixels);
+        for (int p = 0, i = 0; p < count; p++, i += channels) {
+            byte value = 0;
+            for (int c = i; c < i + channels; c++) {
+                int difference = (pixels[c] & 0xFF) - (previous[c] & 0xFF);
+                if (difference > threshold || difference < -threshold) {
+                    value = (byte) 255;
+                }
+            }
+            maskPixels[p] = value;
+        }
+        mask.put(0, 0, maskPixels);
+        
+        byte[] swap = previous;
+        previous = pixels;
+        pixels = swap;
+    }
+}
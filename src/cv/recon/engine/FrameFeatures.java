@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Features of the foreground mask of one frame, filled by MaskAnalyzer and
+ * reused from frame to frame.
+ * <p/>
+ * Coordinates are in pixels of the source frame, also when the mask is
+ * processed at a lower resolution or inside a region of interest. Every
+ * feature is 0 when the mask is empty.
+ *
+ * @author Burhanuddin
+ */
+public class FrameFeatures {
+    
+    int count;
+    double centroidX;
+    double centroidY;
+    double left;
+    double top;
+    double width;
+    double height;
+    double varianceX;
+    double varianceY;
+    double covariance;
+    
+    /**
+     * Set every feature to 0.
+     */
+    public void clear() {
+        count = 0;
+        centroidX = 0;
+        centroidY = 0;
+        left = 0;
+        top = 0;
+        width = 0;
+        height = 0;
+        varianceX = 0;
+        varianceY = 0;
+        covariance = 0;
+    }
+    
+    /**
+     * Copy every feature of another record.
+     * @param other Record to copy from
+     */
+    public void copyFrom(FrameFeatures other) {
+        count = other.count;
+        centroidX = other.centroidX;
+        centroidY = other.centroidY;
+        left = other.left;
+        top = other.top;
+        width = other.width;
+        height = other.height;
+        varianceX = other.varianceX;
+        varianceY = other.varianceY;
+        covariance = other.covariance;
+    }
+    
+    /**
+     * Return a feature as repetition signal.
+     * @param signal Feature to return
+     * @return Value of the feature
+     */
+    public double get(Signal signal) {
+        switch (signal) {
+            case CENTROID_X:
+                return centroidX;
+            case CENTROID_Y:
+                return centroidY;
+            case WIDTH:
+                return width;
+            case HEIGHT:
+                return height;
+            case SPREAD_X:
+                return Math.sqrt(varianceX);
+            case SPREAD_Y:
+                return Math.sqrt(varianceY);
+            default:
+                return count;
+        }
+    }
+    
+    /**
+     * @return Non-zero pixel count, the zeroth moment
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    public double getCentroidX() {
+        return centroidX;
+    }
+    
+    public double getCentroidY() {
+        return centroidY;
+    }
+    
+    /**
+     * @return Left edge of the bounding box
+     */
+    public double getLeft() {
+        return left;
+    }
+    
+    /**
+     * @return Top edge of the bounding box
+     */
+    public double getTop() {
+        return top;
+    }
+    
+    public double getWidth() {
+        return width;
+    }
+    
+    public double getHeight() {
+        return height;
+    }
+    
+    /**
+     * @return Second central moment in x over count
+     */
+    public double getVarianceX() {
+        return varianceX;
+    }
+    
+    /**
+     * @return Second central moment in y over count
+     */
+    public double getVarianceY() {
+        return varianceY;
+    }
+    
+    /**
+     * @return Mixed second central moment over count
+     */
+    public double getCovariance() {
+        return covariance;
+    }
+    
+    /**
+     * Return angle of the major axis of the foreground.
+     * @return Orientation in radians from the x axis
+     */
+    public double getOrientation() {
+        return 0.5 * Math.atan2(2 * covariance, varianceX - varianceY);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Render stage of the pipeline.
+ *
+ * @author Burhanuddin
+ */
+public interface FrameListener {
+    
+    /**
+     * Called from processing thread when a frame is processed. The listener
+     * owns the frame until it calls Pipeline.release, or Pipeline.drop if it
+     * does not display it, and must not block.
+     * @param frame Processed frame
+     */
+    void frameProcessed(Frame frame);
+}
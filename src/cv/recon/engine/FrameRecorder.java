@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Append raw frames with their timestamps to segmented recording files, for
+ * replaying them later with RecordingSource.
+ * <p/>
+ * Segments are named base.00000.rec, base.00001.rec and so on. A new segment
+ * is started when the current one would grow past the segment size, so every
+ * segment can be memory-mapped whole. Each segment starts with a magic number
+ * and a version, followed by frames, each a header of timestamp, rows, cols,
+ * type and payload length, and the pixels as stored by the Mat.
+ * <p/>
+ * Frames are stored uncompressed so replay needs no decoding. Pixels are read
+ * into a reused array, so writing does not allocate once the frame size is
+ * known.
+ * <p/>
+ * Recording to a base that already has segments replaces the whole old
+ * recording: every segment of that base is deleted when the first segment
+ * is created.
+ *
+ * @author Burhanuddin
+ */
+public class FrameRecorder {
+    
+    public static final int MAGIC = 0x43565252;
+    public static final int VERSION = 1;
+    public static final int FILE_HEADER_SIZE = 8;
+    public static final int FRAME_HEADER_SIZE = 24;
+    public static final String EXTENSION = ".rec";
+    public static final long DEFAULT_SEGMENT_SIZE = 256L << 20;
+    
+    private final Path base;
+    private final long segmentSize;
+    private final ByteBuffer header;
+    private final ByteBuffer[] buffers;
+    private FileChannel channel;
+    private int segment;
+    private long segmentBytes;
+    private byte[] pixels;
+    private ByteBuffer payload;
+    private long frames;
+    
+    /**
+     * Construct recorder with segments of DEFAULT_SEGMENT_SIZE.
+     * @param base Path of the recording without segment number and extension
+     */
+    public FrameRecorder(Path base) {
+        this(base, DEFAULT_SEGMENT_SIZE);
+    }
+    
+    /**
+     * Construct recorder. Nothing is written until the first frame.
+     * @param base Path of the recording without segment number and extension
+     * @param segmentSize Maximum size of a segment in bytes, a single frame
+     * larger than this gets a segment of its own
+     */
+    public FrameRecorder(Path base, long segmentSize) {
+        if (segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must fit a single mapping: " + segmentSize);
+        }
+        this.base = base;
+        this.segmentSize = segmentSize;
+        header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        buffers = new ByteBuffer[2];
+        pixels = new byte[0];
+        payload = ByteBuffer.wrap(pixels);
+    }
+    
+    /**
+     * Return path of a segment of a recording.
+     * @param base Path of the recording without segment number and extension
+     * @param segment Segment number
+     * @return Path of the segment
+     */
+    public static Path segmentPath(Path base, int segment) {
+        return base.resolveSibling(String.format(Locale.ROOT, "%s.%05d%s", base.getFileName(), segment, EXTENSION));
+    }
+    
+    /**
+     * Delete every segment of a recording.
+     * @param base Path of the recording without segment number and extension
+     * @throws IOException If a segment cannot be deleted
+     */
+    public static void deleteSegments(Path base) throws IOException {
+        Path dir = base.toAbsolutePath().getParent();
+        if (dir == null || !Files.isDirectory(dir)) {
+            return;
+        }
+        
+        Pattern segments = Pattern.compile(Pattern.quote(base.getFileName().toString())
+                + "\\.\\d{5}" + Pattern.quote(EXTENSION));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path path : stream) {
+                if (segments.matcher(path.getFileName().toString()).matches()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Append a frame.
+     * @param frame Frame with 8-bit depth
+     * @param timestamp Capture timestamp in milliseconds
+     * @throws IOException If writing fails
+     */
+    public void write(Mat frame, long timestamp) throws IOException {
+        if (CvType.depth(frame.type()) != CvType.CV_8U) {
+            throw new IllegalArgumentException("Only 8-bit frames can be recorded: " + frame);
+        }
+        
+        int length = (int) (frame.total() * frame.elemSize());
+        if (pixels.length != length) {
+            pixels = new byte[length];
+            payload = ByteBuffer.wrap(pixels);
+        }
+        frame.get(0, 0, pixels);
+        
+        long recordSize = FRAME_HEADER_SIZE + length;
+        if (channel == null || segmentBytes + recordSize > segmentSize && segmentBytes > FILE_HEADER_SIZE) {
+            nextSegment();
+        }
+        
+        header.clear();
+        header.putLong(timestamp);
+        header.putInt(frame.rows());
+        header.putInt(frame.cols());
+        header.putInt(frame.type());
+        header.putInt(length);
+        header.flip();
+        payload.clear();
+        
+        buffers[0] = header;
+        buffers[1] = payload;
+        while (payload.hasRemaining()) {
+            channel.write(buffers);
+        }
+        segmentBytes += recordSize;
+        frames++;
+    }
+    
+    /**
+     * Close the current segment and start the next one.
+     * @throws IOException If the segment cannot be created
+     */
+    private void nextSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+            segment++;
+        }
+        
+        Path path = segmentPath(base, segment);
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (segment == 0) {
+            // later segments of an older, longer recording would be replayed too
+            deleteSegments(base);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        
+        ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        fileHeader.putInt(MAGIC);
+        fileHeader.putInt(VERSION);
+        fileHeader.flip();
+        while (fileHeader.hasRemaining()) {
+            channel.write(fileHeader);
+        }
+        segmentBytes = FILE_HEADER_SIZE;
+    }
+    
+    /**
+     * @return Number of frames written
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+    
+    /**
+     * @return Number of segments started
+     */
+    public int getSegmentCount() {
+        return channel == null ? 0 : segment + 1;
+    }
+    
+    /**
+     * Close the current segment.
+     * @throws IOException If closing fails
+     */
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
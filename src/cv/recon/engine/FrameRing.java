@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.MatPool;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded ring of pre-allocated frames connecting two pipeline stages.
+ * <p/>
+ * The producer acquires a free frame, fills it and publishes it. The consumer
+ * takes the published frame and releases it back when done. A frame is owned
+ * by exactly one side at a time, so a frame is never overwritten while it is
+ * being read.
+ *
+ * @author Burhanuddin
+ */
+public class FrameRing {
+    
+    private final Frame[] frames;
+    private final ArrayBlockingQueue<Frame> free;
+    private final ArrayBlockingQueue<Frame> published;
+    
+    /**
+     * Construct frame ring with all frames free.
+     * @param capacity Number of frames in the ring
+     */
+    public FrameRing(int capacity) {
+        frames = new Frame[capacity];
+        free = new ArrayBlockingQueue<>(capacity);
+        published = new ArrayBlockingQueue<>(capacity);
+        
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Frame();
+            free.add(frames[i]);
+        }
+    }
+    
+    /**
+     * Called by producer to get a free frame, waiting if every frame is in use.
+     * @return Free frame owned by the caller
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Frame acquire() throws InterruptedException {
+        return free.take();
+    }
+    
+    /**
+     * Called by producer to get a free frame without waiting.
+     * @return Free frame owned by the caller, null if every frame is in use
+     */
+    public Frame tryAcquire() {
+        return free.poll();
+    }
+    
+    /**
+     * Called by producer to take back the oldest frame the consumer has not
+     * taken yet, dropping it to make room for a newer one.
+     * @return Published frame owned by the caller again, null if there is none
+     */
+    public Frame reclaim() {
+        return published.poll();
+    }
+    
+    /**
+     * Called by producer to hand a filled frame over to the consumer.
+     * @param frame Frame acquired from this ring
+     */
+    public void publish(Frame frame) {
+        published.add(frame);
+    }
+    
+    /**
+     * Called by consumer to get the oldest published frame, waiting if there
+     * is none.
+     * @return Published frame owned by the caller
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Frame take() throws InterruptedException {
+        return published.take();
+    }
+    
+    /**
+     * Called by consumer to get the oldest published frame without waiting.
+     * @return Published frame owned by the caller, null if there is none
+     */
+    public Frame poll() {
+        return published.poll();
+    }
+    
+    /**
+     * Called by consumer to give a frame back to the producer.
+     * @param frame Frame taken from this ring
+     */
+    public void release(Frame frame) {
+        free.add(frame);
+    }
+    
+    /**
+     * Return number of frames published but not yet taken.
+     * @return Queue depth
+     */
+    public int getDepth() {
+        return published.size();
+    }
+    
+    /**
+     * Return number of frames owned by neither side.
+     * @return Free frame count
+     */
+    public int getFreeCount() {
+        return free.size();
+    }
+    
+    public int getCapacity() {
+        return frames.length;
+    }
+    
+    /**
+     * Give Mats of every frame back to the pool. Only call when no stage is
+     * using the ring anymore.
+     * @param pool Pool to give Mats to
+     */
+    public void dispose(MatPool pool) {
+        for (Frame frame : frames) {
+            frame.dispose(pool);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import org.opencv.core.Mat;
+
+/**
+ * A source of frames for the counting pipeline, such as a webcam or a video
+ * file.
+ *
+ * @author Burhanuddin
+ */
+public interface FrameSource {
+    
+    /**
+     * Read the next frame into the given Mat.
+     * @param dst Destination Mat, reallocated only if the frame size changes
+     * @return True if a frame was read, false if there is no more frame
+     */
+    boolean read(Mat dst);
+    
+    /**
+     * Move past the next frame without decoding it, for dropping frames
+     * cheaply.
+     * @return True if a frame was skipped, false if there is no more frame
+     */
+    boolean skip();
+    
+    /**
+     * Return timestamp of the last frame read.
+     * <p/>
+     * For live sources this is the capture time, for files this is the
+     * position of the frame in the file.
+     * @return Timestamp in milliseconds
+     */
+    long getTimestamp();
+    
+    /**
+     * Release resources held by this source.
+     */
+    void close();
+}
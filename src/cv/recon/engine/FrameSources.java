@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Open frame sources from a textual description, as given on the command
+ * line.
+ *
+ * @author Burhanuddin
+ */
+public class FrameSources {
+    
+    /**
+     * Open a frame source, replaying recordings as fast as possible.
+     * @param spec Device index such as "0" for a webcam, path to a recording
+     * or a directory of recordings, otherwise path to a video file
+     * @return Opened frame source
+     * @throws IllegalArgumentException If the source cannot be opened
+     */
+    public static FrameSource open(String spec) {
+        return open(spec, false);
+    }
+    
+    /**
+     * Open a frame source.
+     * @param spec Device index such as "0" for a webcam, path to a recording
+     * or a directory of recordings, otherwise path to a video file
+     * @param realTime Whether to replay recordings at the pace they were
+     * recorded
+     * @return Opened frame source
+     * @throws IllegalArgumentException If the source cannot be opened
+     */
+    public static FrameSource open(String spec, boolean realTime) {
+        Path path = Paths.get(spec);
+        if (RecordingSource.isRecording(path)) {
+            try {
+                return new RecordingSource(path, realTime);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Cannot open " + spec + ": " + ex.getMessage(), ex);
+            }
+        }
+        
+        VideoCaptureSource source;
+        if (spec.matches("\\d+")) {
+            source = new VideoCaptureSource(Integer.parseInt(spec));
+        } else {
+            source = new VideoCaptureSource(spec);
+        }
+        
+        if (!source.isOpened()) {
+            source.close();
+            throw new IllegalArgumentException("Cannot open " + spec);
+        }
+        return source;
+    }
+    
+    /**
+     * Record every frame read from a source.
+     * @param source Source to record
+     * @param base Path of the recording without segment number and extension
+     * @return Source reading from the given one while recording it
+     */
+    public static FrameSource record(FrameSource source, Path base) {
+        return new RecordingFrameSource(source, new FrameRecorder(base));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Choose a backpressure policy from measured stage latency.
+ * <p/>
+ * Capture interval and processing latency are tracked as exponentially
+ * weighted moving averages. Their ratio is the load of the processing stage:
+ * below 1 it keeps up and DROP_OLDEST only absorbs spikes, up to
+ * KEEP_LATEST_LOAD it falls behind slightly and KEEP_LATEST bounds the delay,
+ * and above that only every Nth frame is decoded, with N the rounded up
+ * load. Each average is written by one thread only.
+ *
+ * @author Burhanuddin
+ */
+public class LoadShedder {
+    
+    public static final double SMOOTHING = 0.1;
+    public static final double KEEP_LATEST_LOAD = 2;
+    
+    private final BackpressurePolicy policy;
+    private final int everyNth;
+    private volatile double captureInterval;
+    private volatile double processingLatency;
+    
+    /**
+     * Construct load shedder.
+     * @param policy Policy to apply, AUTO to choose from latency
+     * @param everyNth N for EVERY_NTH when not chosen automatically
+     */
+    public LoadShedder(BackpressurePolicy policy, int everyNth) {
+        if (everyNth < 1) {
+            throw new IllegalArgumentException("N must be at least 1: " + everyNth);
+        }
+        this.policy = policy;
+        this.everyNth = everyNth;
+    }
+    
+    /**
+     * Called by capture stage with the time taken to get a frame from the
+     * source, whether decoded or skipped.
+     * @param nanos Capture interval in nanoseconds
+     */
+    public void captured(long nanos) {
+        captureInterval = average(captureInterval, nanos);
+    }
+    
+    /**
+     * Called by processing stage with the time taken to process a frame and
+     * hand it to the render stage.
+     * @param nanos Processing latency in nanoseconds
+     */
+    public void processed(long nanos) {
+        processingLatency = average(processingLatency, nanos);
+    }
+    
+    private static double average(double average, long sample) {
+        if (average == 0) {
+            return sample;
+        }
+        return average + SMOOTHING * (sample - average);
+    }
+    
+    /**
+     * Return processing latency over capture interval.
+     * @return Load of the processing stage, 0 until both are measured
+     */
+    public double getLoad() {
+        double interval = captureInterval;
+        if (interval == 0) {
+            return 0;
+        }
+        return processingLatency / interval;
+    }
+    
+    /**
+     * Return policy to apply to the next frame.
+     * @return Configured policy, or the one chosen from load if AUTO
+     */
+    public BackpressurePolicy getPolicy() {
+        if (policy != BackpressurePolicy.AUTO) {
+            return policy;
+        }
+        
+        double load = getLoad();
+        if (load < 1) {
+            return BackpressurePolicy.DROP_OLDEST;
+        } else if (load < KEEP_LATEST_LOAD) {
+            return BackpressurePolicy.KEEP_LATEST;
+        }
+        return BackpressurePolicy.EVERY_NTH;
+    }
+    
+    /**
+     * Return N of EVERY_NTH.
+     * @return Configured N, or the rounded up load if AUTO
+     */
+    public int getEveryNth() {
+        if (policy != BackpressurePolicy.AUTO) {
+            return everyNth;
+        }
+        return Math.max(1, (int) Math.ceil(getLoad()));
+    }
+    
+    public double getCaptureInterval() {
+        return captureInterval;
+    }
+    
+    public double getProcessingLatency() {
+        return processingLatency;
+    }
+}
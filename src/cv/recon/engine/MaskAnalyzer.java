@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.PixelKernels;
+import org.opencv.core.Mat;
+
+/**
+ * Compute every FrameFeatures of a binary mask in a single pass.
+ * <p/>
+ * The mask is copied into a reused byte array once, and one loop over it
+ * sums count, first and second moments and finds the bounding box. Per row,
+ * only x sums are kept in the inner loop and y terms are added once per row,
+ * so the loop does little more than countNonZero. Rows are first counted
+ * with PixelKernels, and the moment loop only runs over rows with
+ * foreground, which are few when the subject is small.
+ *
+ * @author Burhanuddin
+ */
+public class MaskAnalyzer {
+    
+    private byte[] pixels = new byte[0];
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+    
+    /**
+     * Analyze a mask.
+     * @param mask Binary CV_8UC1 mask, may be a submat
+     * @param features Record to be filled
+     * @param offsetX Left of the mask in processing pixels
+     * @param offsetY Top of the mask in processing pixels
+     * @param scaleX Processing pixels per source pixel horizontally
+     * @param scaleY Processing pixels per source pixel vertically
+     */
+    public void analyze(Mat mask, FrameFeatures features, int offsetX, int offsetY,
+            double scaleX, double scaleY) {
+        features.clear();
+        left = 0;
+        top = 0;
+        right = 0;
+        bottom = 0;
+        
+        int rows = mask.rows();
+        int cols = mask.cols();
+        int length = rows * cols;
+        if (pixels.length < length) {
+            pixels = new byte[length];
+        }
+        mask.get(0, 0, pixels);
+        
+        long count = 0;
+        long sumX = 0;
+        long sumY = 0;
+        long sumXX = 0;
+        long sumYY = 0;
+        long sumXY = 0;
+        int minX = cols;
+        int maxX = -1;
+        int minY = -1;
+        int maxY = -1;
+        
+        for (int y = 0; y < rows; y++) {
+            int offset = y * cols;
+            long rowCount = PixelKernels.countNonZero(pixels, offset, cols);
+            if (rowCount == 0) {
+                continue;
+            }
+            
+            long rowSumX = 0;
+            long rowSumXX = 0;
+            int rowMin = -1;
+            int rowMax = -1;
+            
+            for (int x = 0; x < cols; x++) {
+                if (pixels[offset + x] != 0) {
+                    if (rowMin < 0) {
+                        rowMin = x;
+                    }
+                    rowMax = x;
+                    rowSumX += x;
+                    rowSumXX += (long) x * x;
+                }
+            }
+            
+            if (minY < 0) {
+                minY = y;
+            }
+            maxY = y;
+            minX = Math.min(minX, rowMin);
+            maxX = Math.max(maxX, rowMax);
+            
+            count += rowCount;
+            sumX += rowSumX;
+            sumXX += rowSumXX;
+            sumY += rowCount * y;
+            sumYY += rowCount * y * y;
+            sumXY += rowSumX * y;
+        }
+        
+        if (count == 0) {
+            return;
+        }
+        left = minX;
+        top = minY;
+        right = maxX + 1;
+        bottom = maxY + 1;
+        
+        double meanX = (double) sumX / count;
+        double meanY = (double) sumY / count;
+        
+        features.count = (int) Math.round(count / (scaleX * scaleY));
+        features.centroidX = (meanX + offsetX) / scaleX;
+        features.centroidY = (meanY + offsetY) / scaleY;
+        features.left = (minX + offsetX) / scaleX;
+        features.top = (minY + offsetY) / scaleY;
+        features.width = (right - left) / scaleX;
+        features.height = (bottom - top) / scaleY;
+        features.varianceX = ((double) sumXX / count - meanX * meanX) / (scaleX * scaleX);
+        features.varianceY = ((double) sumYY / count - meanY * meanY) / (scaleY * scaleY);
+        features.covariance = ((double) sumXY / count - meanX * meanY) / (scaleX * scaleY);
+    }
+    
+    /**
+     * @return Left of the bounding box of the last mask in mask pixels
+     */
+    int getLeft() {
+        return left;
+    }
+    
+    /**
+     * @return Top of the bounding box of the last mask in mask pixels
+     */
+    int getTop() {
+        return top;
+    }
+    
+    /**
+     * @return Right of the bounding box of the last mask in mask pixels,
+     * exclusive
+     */
+    int getRight() {
+        return right;
+    }
+    
+    /**
+     * @return Bottom of the bounding box of the last mask in mask pixels,
+     * exclusive
+     */
+    int getBottom() {
+        return bottom;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.Position;
+import cv.recon.util.SlidingWindowStatistics;
+
+/**
+ * Count repetition from a stream of samples such as non-zero pixel count, by
+ * crossings of the mid range of recent samples.
+ * <p/>
+ * A sample above the mid range of the recent window means the subject is
+ * AWAY_FROM_INITIAL, otherwise CLOSE_TO_INITIAL. The counter is increased
+ * when the position changes from AWAY_FROM_INITIAL to CLOSE_TO_INITIAL.
+ * <p/>
+ * The window is kept in SlidingWindowStatistics, so the cost per sample does
+ * not grow with the window size.
+ *
+ * @author Burhanuddin
+ */
+public class MidRangeCounter implements RepetitionCounter {
+    
+    public static final int DEFAULT_WINDOW_SIZE = 50;
+    
+    private final SlidingWindowStatistics window;
+    private double midRange;
+    private long count;
+    private Position currentPosition;
+    
+    /**
+     * Construct repetition counter with default window size.
+     */
+    public MidRangeCounter() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+    
+    /**
+     * Construct repetition counter with specified window size.
+     * @param windowSize Number of recent samples used for mid range
+     */
+    public MidRangeCounter(int windowSize) {
+        window = new SlidingWindowStatistics(windowSize);
+        reset();
+    }
+    
+    /**
+     * Clear the window and set the count back to zero.
+     */
+    @Override
+    public final void reset() {
+        window.clear();
+        midRange = 0;
+        count = 0;
+        currentPosition = Position.CLOSE_TO_INITIAL;
+    }
+    
+    /**
+     * Add a sample and check for repetition.
+     * @param timestamp Timestamp of the sample in milliseconds
+     * @param value Sample value
+     * @return A boolean stating whether this sample completed a repetition
+     */
+    @Override
+    public boolean addSample(long timestamp, double value) {
+        window.add(timestamp, value);
+        
+        midRange = window.getMidRange();
+        return checkRepetition(value);
+    }
+    
+    /**
+     * Check if there is a change in position according to mid range value.
+     * @param currentValue Latest sample value
+     * @return A boolean stating whether a repetition was counted
+     */
+    private boolean checkRepetition(double currentValue) {
+        Position newPos;
+        if (currentValue > midRange) {
+            newPos = Position.AWAY_FROM_INITIAL;
+        } else {
+            newPos = Position.CLOSE_TO_INITIAL;
+        }
+        
+        if (!currentPosition.equals(newPos)) {
+            currentPosition = newPos;
+            
+            if (currentPosition.equals(Position.CLOSE_TO_INITIAL)) {
+                count++;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Return statistics of the current window.
+     * @return Window statistics, must not be modified
+     */
+    public SlidingWindowStatistics getWindow() {
+        return window;
+    }
+    
+    /**
+     * Return mid range of the current window.
+     * @return Mid range value
+     */
+    @Override
+    public double getMidRange() {
+        return midRange;
+    }
+    
+    /**
+     * Return current position.
+     * @return Current position
+     */
+    public Position getPosition() {
+        return currentPosition;
+    }
+    
+    /**
+     * Return number of repetition counted since last reset.
+     * @return Repetition count
+     */
+    @Override
+    public long getCount() {
+        return count;
+    }
+}
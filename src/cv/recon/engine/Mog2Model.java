@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import org.opencv.core.Mat;
+import org.opencv.video.BackgroundSubtractorMOG2;
+
+/**
+ * Background model of OpenCV BackgroundSubtractorMOG2, with a history of 100
+ * frames, a variance threshold of 75 and no shadow detection.
+ * <p/>
+ * Keeps a mixture of up to five Gaussians per pixel, so it copes with
+ * flicker and gradual lighting changes, but is the most expensive model:
+ * several Gaussians are matched and updated per pixel and channel, natively.
+ *
+ * @author Burhanuddin
+ */
+public class Mog2Model implements BackgroundModel {
+    
+    public static final int HISTORY = 100;
+    public static final float VAR_THRESHOLD = 75f;
+    
+    private final BackgroundSubtractorMOG2 bsmog;
+    
+    /**
+     * Construct model with the default history and threshold.
+     */
+    public Mog2Model() {
+        bsmog = new BackgroundSubtractorMOG2(HISTORY, VAR_THRESHOLD, false);
+    }
+    
+    @Override
+    public void apply(Mat frame, Mat mask) {
+        bsmog.apply(frame, mask);
+    }
+}
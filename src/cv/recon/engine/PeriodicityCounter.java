@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.Position;
+import java.util.Arrays;
+
+/**
+ * Count repetition by the dominant period of the signal, estimated with a
+ * sliding autocorrelation.
+ * <p/>
+ * Each sample has the running mean removed and is kept in a ring. For every
+ * lag up to the maximum period, the sum of products of samples that far
+ * apart over the window is updated by adding the newest product and removing
+ * the oldest one, so a sample costs O(maxPeriod) whatever the window. The
+ * period is the first high autocorrelation peak after the first zero
+ * crossing, and its height relative to lag 0 is the confidence that the
+ * signal is periodic.
+ * <p/>
+ * A repetition is a fall of the signal from above to below the mean, with a
+ * hysteresis of a fraction of its RMS amplitude so noise around the mean
+ * does not count. Falls closer than half a period to the previous repetition,
+ * or much shallower than recent repetitions, are ignored, which keeps
+ * noise after the exercise from counting.
+ * <p/>
+ * While the signal is not periodic, falls are held back. Once it is, those
+ * of the last two windows that are deep compared to the now periodic signal
+ * are counted all at once, so the first repetitions, seen before the period
+ * can be estimated, are not lost, while noise before the exercise is.
+ *
+ * @author Burhanuddin
+ */
+public class PeriodicityCounter implements RepetitionCounter {
+    
+    public static final int DEFAULT_MAX_PERIOD = 60;
+    public static final int MIN_PERIOD = 4;
+    public static final double CONFIDENCE_THRESHOLD = 0.5;
+    public static final double HYSTERESIS = 0.25;
+    public static final double PEAK_RATIO = 0.8;
+    public static final double DEPTH_RATIO = 0.6;
+    public static final double CHAIN_MIN = 0.7;
+    public static final double CHAIN_MAX = 1.4;
+    
+    private static final int PENDING_CAPACITY = 64;
+    private static final double DEPTH_SMOOTHING = 0.3;
+    
+    private final int maxPeriod;
+    private final int window;
+    private final double[] samples;
+    private final double[] sums;
+    private final double alpha;
+    private long sampleCount;
+    private double mean;
+    private int period;
+    private double confidence;
+    private Position position;
+    private double peak;
+    private double depth;
+    private long lastRepetition;
+    private final long[] pendingTimes;
+    private final double[] pendingDepths;
+    private long pendingStart;
+    private long pendingEnd;
+    private long count;
+    
+    /**
+     * Construct counter for periods of up to DEFAULT_MAX_PERIOD samples.
+     */
+    public PeriodicityCounter() {
+        this(DEFAULT_MAX_PERIOD);
+    }
+    
+    /**
+     * Construct counter. The window is twice the maximum period.
+     * @param maxPeriod Longest period detected, in samples
+     */
+    public PeriodicityCounter(int maxPeriod) {
+        if (maxPeriod <= MIN_PERIOD) {
+            throw new IllegalArgumentException("Maximum period must be above " + MIN_PERIOD + ": " + maxPeriod);
+        }
+        this.maxPeriod = maxPeriod;
+        window = 2 * maxPeriod;
+        samples = new double[window + maxPeriod + 1];
+        sums = new double[maxPeriod + 1];
+        pendingTimes = new long[PENDING_CAPACITY];
+        pendingDepths = new double[PENDING_CAPACITY];
+        alpha = 2.0 / (window + 1);
+        reset();
+    }
+    
+    @Override
+    public final void reset() {
+        Arrays.fill(sums, 0);
+        sampleCount = 0;
+        mean = 0;
+        period = 0;
+        confidence = 0;
+        position = Position.CLOSE_TO_INITIAL;
+        peak = 0;
+        depth = 0;
+        lastRepetition = Long.MIN_VALUE / 2;
+        pendingStart = 0;
+        pendingEnd = 0;
+        count = 0;
+    }
+    
+    @Override
+    public boolean addSample(long timestamp, double value) {
+        if (sampleCount == 0) {
+            mean = value;
+        } else {
+            mean += alpha * (value - mean);
+        }
+        double d = value - mean;
+        
+        long t = sampleCount++;
+        int length = samples.length;
+        samples[(int) (t % length)] = d;
+        
+        long available = Math.min(t, maxPeriod);
+        for (int lag = 0; lag <= available; lag++) {
+            sums[lag] += d * samples[(int) ((t - lag) % length)];
+        }
+        if (t >= window) {
+            double old = samples[(int) ((t - window) % length)];
+            long oldAvailable = Math.min(t - window, maxPeriod);
+            for (int lag = 0; lag <= oldAvailable; lag++) {
+                sums[lag] -= old * samples[(int) ((t - window - lag) % length)];
+            }
+        }
+        
+        estimatePeriod();
+        return checkRepetition(t, d);
+    }
+    
+    /**
+     * Find the first autocorrelation peak after the first zero crossing that
+     * is nearly as high as the highest one, as multiples of the period peak
+     * about as high as the period itself.
+     */
+    private void estimatePeriod() {
+        period = 0;
+        confidence = 0;
+        if (sampleCount < window || sums[0] <= 0) {
+            return;
+        }
+        
+        int first = 1;
+        while (first <= maxPeriod && sums[first] > 0) {
+            first++;
+        }
+        first = Math.max(first, MIN_PERIOD);
+        
+        double best = 0;
+        for (int lag = first; lag <= maxPeriod; lag++) {
+            best = Math.max(best, sums[lag]);
+        }
+        if (best < CONFIDENCE_THRESHOLD * sums[0]) {
+            return;
+        }
+        
+        for (int lag = first; lag <= maxPeriod; lag++) {
+            boolean localMax = sums[lag] >= sums[lag - 1] && (lag == maxPeriod || sums[lag] >= sums[lag + 1]);
+            if (localMax && sums[lag] >= PEAK_RATIO * best) {
+                if (sums[lag] >= CONFIDENCE_THRESHOLD * sums[0]) {
+                    period = lag;
+                    confidence = sums[lag] / sums[0];
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Count a fall below the mean if it is far enough from the previous one
+     * and about as deep as previous repetitions, or hold it back while the
+     * signal is not periodic.
+     * @param t Sample number
+     * @param d Sample with the mean removed
+     * @return A boolean stating whether the count increased
+     */
+    private boolean checkRepetition(long t, double d) {
+        long n = Math.min(sampleCount, window);
+        double threshold = HYSTERESIS * Math.sqrt(Math.max(0, sums[0]) / n);
+        
+        boolean fell = false;
+        if (position == Position.CLOSE_TO_INITIAL && d > threshold) {
+            position = Position.AWAY_FROM_INITIAL;
+            peak = d;
+        } else if (position == Position.AWAY_FROM_INITIAL) {
+            peak = Math.max(peak, d);
+            if (d < -threshold) {
+                position = Position.CLOSE_TO_INITIAL;
+                fell = true;
+            }
+        }
+        
+        if (period == 0) {
+            if (fell) {
+                int i = (int) (pendingEnd++ % PENDING_CAPACITY);
+                pendingTimes[i] = t;
+                pendingDepths[i] = peak - d;
+            }
+            return false;
+        }
+        
+        long before = count;
+        if (pendingEnd > pendingStart) {
+            countPending(t, 2 * threshold);
+        }
+        if (fell) {
+            countFall(t, peak - d);
+        }
+        return count > before;
+    }
+    
+    /**
+     * Count falls seen before the period was known. Going back from the
+     * latest, falls are chained while each is about a period before the
+     * next, within two windows, and deep compared to both the now periodic
+     * signal and the latest fall. Noise before the exercise does not keep
+     * that rhythm nor depth, and ends the chain.
+     * @param t Current sample number
+     * @param minDepth Least depth of a counted fall
+     */
+    private void countPending(long t, double minDepth) {
+        pendingStart = Math.max(pendingStart, pendingEnd - PENDING_CAPACITY);
+        minDepth = Math.max(minDepth, DEPTH_RATIO * pendingDepths[(int) ((pendingEnd - 1) % PENDING_CAPACITY)]);
+        long chainStart = pendingEnd;
+        long next = -1;
+        for (long k = pendingEnd - 1; k >= pendingStart; k--) {
+            int i = (int) (k % PENDING_CAPACITY);
+            if (t - pendingTimes[i] > 2 * window) {
+                break;
+            }
+            if (pendingDepths[i] < minDepth) {
+                continue;
+            }
+            if (next >= 0) {
+                long gap = next - pendingTimes[i];
+                if (gap < CHAIN_MIN * period) {
+                    continue;
+                }
+                if (gap > CHAIN_MAX * period) {
+                    break;
+                }
+            }
+            next = pendingTimes[i];
+            chainStart = k;
+        }
+        
+        for (long k = chainStart; k < pendingEnd; k++) {
+            int i = (int) (k % PENDING_CAPACITY);
+            if (pendingDepths[i] >= minDepth) {
+                countFall(pendingTimes[i], pendingDepths[i]);
+            }
+        }
+        pendingStart = pendingEnd;
+    }
+    
+    /**
+     * Count a fall if it is at least half a period after the previous
+     * repetition and at least DEPTH_RATIO times as deep as recent
+     * repetitions.
+     * @param t Sample number of the fall
+     * @param depth Peak to fall depth
+     */
+    private void countFall(long t, double depth) {
+        if (t - lastRepetition < period / 2 || depth < DEPTH_RATIO * this.depth) {
+            return;
+        }
+        lastRepetition = t;
+        this.depth = this.depth == 0 ? depth : this.depth + DEPTH_SMOOTHING * (depth - this.depth);
+        count++;
+    }
+    
+    /**
+     * Return mean the signal is compared to.
+     * @return Running mean
+     */
+    @Override
+    public double getMidRange() {
+        return mean;
+    }
+    
+    @Override
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Return dominant period of the current window.
+     * @return Period in samples, 0 if the signal is not periodic
+     */
+    public int getPeriod() {
+        return period;
+    }
+    
+    /**
+     * Return normalized autocorrelation at the period.
+     * @return Confidence, up to about 1 for a clean periodic signal
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+    
+    /**
+     * Return current position.
+     * @return Current position
+     */
+    public Position getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,628 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.AllocationCounter;
+import cv.recon.util.MatPool;
+import cv.recon.util.ParallelMorphology;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Rect;
+
+/**
+ * Staged capture, process and render pipeline.
+ * <p/>
+ * A capture thread reads frames from the source into a capture ring, and a
+ * processing thread runs background subtraction on them and hands them to
+ * the render stage through a render ring. Stages only wait on each other when
+ * a ring is full, so throughput is limited by the slowest stage instead of a
+ * fixed timer.
+ * <p/>
+ * When processing cannot keep up with a live source, the capture stage sheds
+ * load by a BackpressurePolicy, by default chosen from measured latency by a
+ * LoadShedder. The render stage may drop frames too. Frames captured,
+ * processed, dropped and rendered are counted, so a slow station keeps
+ * counting on fewer frames instead of falling further and further behind.
+ * <p/>
+ * Repetition is counted on the processing thread for every frame, and the
+ * sample is published with the capture timestamp of its frame. The sample is
+ * a Signal picked from the FrameFeatures of the frame, which are computed in
+ * one pass over the foreground mask. Foreground
+ * regions are extracted into the frame as well when enabled. With ROI
+ * tracking, per-pixel stages only run inside a region of interest, see
+ * ForegroundExtractor.
+ * <p/>
+ * Latency of every Stage is recorded into StageStatistics.
+ * <p/>
+ * Buffers come from the shared MatPool. Java heap bytes and native buffers
+ * allocated by the processing stage are counted once it has warmed up, and
+ * both stay at zero in steady state.
+ * <p/>
+ * A RuntimeException in the capture or processing stage is logged and ends
+ * that stage, and is rethrown by awaitCompletion.
+ *
+ * @author Burhanuddin
+ */
+public class Pipeline {
+    
+    public static final int RING_CAPACITY = 3;
+    public static final int WARM_UP_FRAMES = 10;
+    
+    private final MatPool pool;
+    private final FrameSource source;
+    private final FrameListener listener;
+    private final SignalListener signalListener;
+    private final FrameRing captureRing;
+    private final FrameRing renderRing;
+    private final ForegroundExtractor extractor;
+    private RepetitionCounter counter;
+    private final RegionExtractor regionExtractor;
+    private final StageStatistics statistics;
+    private final ParallelMorphology morphology;
+    private Thread captureThread;
+    private Thread processingThread;
+    private volatile LoadShedder loadShedder;
+    private volatile boolean running;
+    private volatile boolean captureDone;
+    private volatile RuntimeException failure;
+    private CountDownLatch completed;
+    private volatile boolean startRequested;
+    private volatile boolean regionExtraction;
+    private volatile boolean roiTracking;
+    private volatile boolean parallelMorphology;
+    private volatile double processingScale = 1;
+    private volatile long pixelBudget;
+    private volatile Signal signal = Signal.COUNT;
+    private volatile CounterType counterType = CounterType.MID_RANGE;
+    private volatile BackgroundModelType backgroundModel = BackgroundModelType.MOG2;
+    private final AtomicReference<Rect> requestedRoi;
+    private volatile long capturedCount;
+    private volatile long processedCount;
+    private final AtomicLong droppedCount;
+    private final AtomicLong renderedCount;
+    private final AtomicBoolean renderDisposed;
+    private volatile long allocatedBytes;
+    private volatile long nativeAllocations;
+    
+    /**
+     * Construct pipeline.
+     * @param source Frame source, closed when the pipeline is stopped
+     * @param listener Render stage
+     * @param signalListener Receiver of the repetition signal
+     */
+    public Pipeline(FrameSource source, FrameListener listener, SignalListener signalListener) {
+        this.source = source;
+        this.listener = listener;
+        this.signalListener = signalListener;
+        
+        pool = MatPool.getShared();
+        captureRing = new FrameRing(RING_CAPACITY);
+        renderRing = new FrameRing(RING_CAPACITY);
+        extractor = new ForegroundExtractor(pool);
+        counter = new MidRangeCounter();
+        regionExtractor = new RegionExtractor(pool);
+        statistics = new StageStatistics();
+        extractor.setStatistics(statistics);
+        morphology = new ParallelMorphology();
+        requestedRoi = new AtomicReference<>();
+        loadShedder = new LoadShedder(BackpressurePolicy.AUTO, 1);
+        droppedCount = new AtomicLong();
+        renderedCount = new AtomicLong();
+        renderDisposed = new AtomicBoolean();
+    }
+    
+    /**
+     * Set what the capture stage does when processing cannot keep up. Call
+     * before start.
+     * @param policy Backpressure policy, AUTO by default
+     * @param everyNth N for EVERY_NTH, ignored by other policies
+     */
+    public void setBackpressure(BackpressurePolicy policy, int everyNth) {
+        loadShedder = new LoadShedder(policy, everyNth);
+    }
+    
+    /**
+     * Start capture and processing threads.
+     */
+    public void start() {
+        running = true;
+        captureDone = false;
+        completed = new CountDownLatch(1);
+        
+        captureThread = new Thread(this::capture, "capture");
+        captureThread.setDaemon(true);
+        processingThread = new Thread(this::process, "processing");
+        processingThread.setDaemon(true);
+        
+        processingThread.start();
+        captureThread.start();
+    }
+    
+    /**
+     * Capture stage. Read frames until the source is exhausted or the
+     * pipeline is stopped, dropping frames as the backpressure policy says.
+     */
+    private void capture() {
+        long sequence = 0;
+        long last = System.nanoTime();
+        
+        try {
+            while (running) {
+                BackpressurePolicy policy = loadShedder.getPolicy();
+                
+                if (policy == BackpressurePolicy.EVERY_NTH
+                        && sequence % loadShedder.getEveryNth() != 0) {
+                    if (!source.skip()) {
+                        break;
+                    }
+                    sequence++;
+                    capturedCount++;
+                    droppedCount.incrementAndGet();
+                    last = measureCapture(last);
+                    continue;
+                }
+                
+                Frame frame = acquireCaptureFrame(policy);
+                
+                long readStart = System.nanoTime();
+                if (!source.read(frame.getSource())) {
+                    captureRing.release(frame);
+                    break;
+                }
+                frame.setTimestamp(source.getTimestamp());
+                frame.setSequence(sequence++);
+                frame.setCaptureTime(statistics.recordSince(Stage.CAPTURE, readStart));
+                capturedCount++;
+                last = measureCapture(last);
+                
+                captureRing.publish(frame);
+                
+                if (policy == BackpressurePolicy.KEEP_LATEST) {
+                    while (captureRing.getDepth() > 1) {
+                        Frame stale = captureRing.reclaim();
+                        if (stale == null) {
+                            break;
+                        }
+                        captureRing.release(stale);
+                        droppedCount.incrementAndGet();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            // stopped while waiting for a free frame
+        } catch (RuntimeException ex) {
+            fail(ex);
+        } finally {
+            captureDone = true;
+            checkCompleted();
+        }
+    }
+    
+    /**
+     * Get a frame to capture into. Unless blocking, the oldest queued frame is
+     * dropped and reused when no frame is free.
+     * @param policy Current backpressure policy
+     * @return Frame owned by the capture stage
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private Frame acquireCaptureFrame(BackpressurePolicy policy) throws InterruptedException {
+        if (policy == BackpressurePolicy.BLOCK) {
+            return captureRing.acquire();
+        }
+        
+        Frame frame = captureRing.tryAcquire();
+        if (frame == null) {
+            frame = captureRing.reclaim();
+            if (frame != null) {
+                droppedCount.incrementAndGet();
+            } else {
+                // every frame is being processed, wait for one
+                frame = captureRing.acquire();
+            }
+        }
+        return frame;
+    }
+    
+    /**
+     * Feed time since the previous frame to the load shedder.
+     * @param last Time of the previous frame in nanoseconds
+     * @return Time of this frame
+     */
+    private long measureCapture(long last) {
+        long now = System.nanoTime();
+        loadShedder.captured(now - last);
+        return now;
+    }
+    
+    /**
+     * Processing stage. Move each captured frame into a render frame without
+     * copying, subtract background, count repetition and pass it to the
+     * render stage.
+     */
+    private void process() {
+        long warmUpCount = 0;
+        Signal counted = signal;
+        
+        try {
+            while (running) {
+                Frame captured = captureRing.take();
+                long processingStart = System.nanoTime();
+                Frame frame = renderRing.acquire();
+                
+                frame.swapSource(captured);
+                captureRing.release(captured);
+                
+                if (startRequested) {
+                    startRequested = false;
+                    extractor.setRoiTracking(roiTracking);
+                    extractor.setBackgroundModel(backgroundModel);
+                    extractor.setProcessingScale(processingScale);
+                    extractor.setPixelBudget(pixelBudget);
+                    extractor.setParallelMorphology(parallelMorphology ? morphology : null);
+                    extractor.start();
+                    counted = signal;
+                    counter = counterType.create();
+                    warmUpCount = 0;
+                }
+                
+                Rect roi = requestedRoi.getAndSet(null);
+                if (roi != null) {
+                    extractor.setRegionOfInterest(roi.x, roi.y, roi.width, roi.height);
+                }
+                
+                long allocationStart = AllocationCounter.getAllocatedBytes();
+                long nativeStart = pool.getAllocationCount();
+                
+                long stageStart = System.nanoTime();
+                
+                boolean counting = extractor.isStarted();
+                boolean repetition = false;
+                
+                if (counting) {
+                    frame.prepareOutput(pool);
+                }
+                FrameFeatures features = frame.getFeatures();
+                frame.setNonZeroCount(extractor.apply(frame.getSource(), frame.getOutput(), features));
+                double value = features.get(counted);
+                if (counting) {
+                    long signalStart = System.nanoTime();
+                    repetition = counter.addSample(frame.getTimestamp(), value);
+                    statistics.recordSince(Stage.SIGNAL, signalStart);
+                }
+                if (counting && regionExtraction) {
+                    long regionsStart = System.nanoTime();
+                    regionExtractor.extract(extractor.getForegroundMask(), frame.getRegions());
+                    statistics.recordSince(Stage.REGIONS, regionsStart);
+                } else {
+                    frame.getRegions().clear();
+                }
+                statistics.recordSince(Stage.PROCESSING, stageStart);
+                
+                if (++warmUpCount > WARM_UP_FRAMES) {
+                    allocatedBytes += AllocationCounter.since(allocationStart);
+                    nativeAllocations += pool.getAllocationCount() - nativeStart;
+                }
+                processedCount++;
+                
+                if (counting) {
+                    signalListener.sampleAdded(frame.getTimestamp(), value,
+                            counter.getMidRange(), counter.getCount(), repetition);
+                }
+                listener.frameProcessed(frame);
+                
+                // includes waiting for the render stage, which slows this one
+                loadShedder.processed(System.nanoTime() - processingStart);
+            }
+        } catch (InterruptedException ex) {
+            // stopped while waiting for a frame
+        } catch (RuntimeException ex) {
+            fail(ex);
+        }
+    }
+    
+    /**
+     * Record failure of a stage and release anyone waiting for completion.
+     * @param ex Exception that ended the stage
+     */
+    private void fail(RuntimeException ex) {
+        Logger.getLogger(Pipeline.class.getName()).log(Level.SEVERE, null, ex);
+        if (failure == null) {
+            failure = ex;
+        }
+        completed.countDown();
+    }
+    
+    /**
+     * Signal completion once capture is done and every captured frame has
+     * been rendered or dropped. Called after each of those events, and each
+     * caller updates its own count before reading the others, so the last of
+     * them sees the pipeline complete.
+     */
+    private void checkCompleted() {
+        if (captureDone && renderedCount.get() + droppedCount.get() >= capturedCount) {
+            completed.countDown();
+        }
+    }
+    
+    /**
+     * Wait until the source is exhausted and every frame read from it has
+     * been processed and given back by the render stage, or dropped. Only
+     * returns for sources that end, such as files and recordings.
+     * @throws InterruptedException If interrupted while waiting
+     * @throws IllegalStateException If the capture or processing stage failed
+     */
+    public void awaitCompletion() throws InterruptedException {
+        completed.await();
+        if (failure != null) {
+            throw new IllegalStateException("Pipeline failed", failure);
+        }
+    }
+    
+    /**
+     * Start background subtraction using next processed frame as background
+     * frame, and start counting repetition from zero.
+     */
+    public void startBackgroundSubtraction() {
+        startRequested = true;
+    }
+    
+    /**
+     * Process frames at a fixed fraction of their size, taking effect on next
+     * start of background subtraction. Rendered frames keep their size.
+     * @param scale Scale of width and height, for example 0.5 or 0.25
+     */
+    public void setProcessingScale(double scale) {
+        if (scale <= 0 || scale > 1) {
+            throw new IllegalArgumentException("Processing scale must be in (0, 1]: " + scale);
+        }
+        processingScale = scale;
+        pixelBudget = 0;
+    }
+    
+    /**
+     * Process frames at the largest size within a number of pixels, taking
+     * effect on next start of background subtraction.
+     * @param pixels Pixel budget, 0 to use the processing scale instead
+     */
+    public void setPixelBudget(long pixels) {
+        if (pixels < 0) {
+            throw new IllegalArgumentException("Pixel budget must not be negative: " + pixels);
+        }
+        pixelBudget = pixels;
+    }
+    
+    /**
+     * Set feature of the foreground mask to count repetition on, taking effect
+     * on next start of background subtraction.
+     * @param signal Repetition signal, COUNT by default
+     */
+    public void setSignal(Signal signal) {
+        this.signal = signal;
+    }
+    
+    /**
+     * Set kind of background model, taking effect on next start of background
+     * subtraction. Cheaper models suit low-power stations.
+     * @param backgroundModel Kind of background model, MOG2 by default
+     */
+    public void setBackgroundModel(BackgroundModelType backgroundModel) {
+        this.backgroundModel = backgroundModel;
+    }
+    
+    /**
+     * Set how repetition is counted, taking effect on next start of
+     * background subtraction.
+     * @param counterType Kind of counter, MID_RANGE by default
+     */
+    public void setCounter(CounterType counterType) {
+        this.counterType = counterType;
+    }
+    
+    /**
+     * Run erode and dilate in parallel strips on the common ForkJoinPool,
+     * taking effect on next start of background subtraction.
+     * @param parallelMorphology Whether to use every core for morphology
+     */
+    public void setParallelMorphology(boolean parallelMorphology) {
+        this.parallelMorphology = parallelMorphology;
+    }
+    
+    /**
+     * Enable or disable ROI tracking, taking effect on next start of
+     * background subtraction.
+     * @param roiTracking Whether to track a region of interest
+     */
+    public void setRoiTracking(boolean roiTracking) {
+        this.roiTracking = roiTracking;
+    }
+    
+    /**
+     * Restrict processing to a user drawn region of interest, applied by the
+     * processing thread on its next frame. Enables ROI tracking.
+     * @param roi Region in frame pixels
+     */
+    public void setRegionOfInterest(Rect roi) {
+        roiTracking = true;
+        requestedRoi.set(roi);
+    }
+    
+    /**
+     * Enable or disable foreground region extraction. Contour search allocates
+     * per frame, so it is off by default.
+     * @param regionExtraction Whether to fill the regions of each frame
+     */
+    public void setRegionExtraction(boolean regionExtraction) {
+        this.regionExtraction = regionExtraction;
+    }
+    
+    /**
+     * Called from render stage to give a frame back once it is displayed.
+     * @param frame Frame received through FrameListener
+     */
+    public void release(Frame frame) {
+        renderedCount.incrementAndGet();
+        renderRing.release(frame);
+        checkCompleted();
+    }
+    
+    /**
+     * Called from render stage to give a frame back without displaying it,
+     * when a later frame has superseded it or the display is busy. The frame
+     * has been counted already.
+     * @param frame Frame received through FrameListener
+     */
+    public void drop(Frame frame) {
+        droppedCount.incrementAndGet();
+        renderRing.release(frame);
+        checkCompleted();
+    }
+    
+    /**
+     * Return number of frames taken from the source since start, including
+     * frames skipped without decoding.
+     * @return Captured frame count
+     */
+    public long getCapturedCount() {
+        return capturedCount;
+    }
+    
+    /**
+     * Return number of frames processed since start.
+     * @return Processed frame count
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+    
+    /**
+     * Return number of frames dropped by capture or render stage since start.
+     * @return Dropped frame count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    /**
+     * Return number of frames displayed since start.
+     * @return Rendered frame count
+     */
+    public long getRenderedCount() {
+        return renderedCount.get();
+    }
+    
+    /**
+     * Return latency histograms of every stage. The render stage records
+     * RENDER, CHART and END_TO_END itself.
+     * @return Stage statistics
+     */
+    public StageStatistics getStatistics() {
+        return statistics;
+    }
+    
+    /**
+     * Return number of captured frames waiting to be processed.
+     * @return Capture queue depth
+     */
+    public int getCaptureQueueDepth() {
+        return captureRing.getDepth();
+    }
+    
+    /**
+     * Return number of processed frames held by the render stage.
+     * @return Render queue depth
+     */
+    public int getRenderQueueDepth() {
+        return renderRing.getCapacity() - renderRing.getFreeCount();
+    }
+    
+    /**
+     * Return load shedder of the capture stage, for its current policy and
+     * measured latency.
+     * @return Load shedder
+     */
+    public LoadShedder getLoadShedder() {
+        return loadShedder;
+    }
+    
+    /**
+     * Return Java heap bytes allocated by the processing stage after warm-up.
+     * @return Allocated bytes
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+    
+    /**
+     * Return number of native buffers allocated by the processing stage after
+     * warm-up.
+     * @return Native allocation count
+     */
+    public long getNativeAllocations() {
+        return nativeAllocations;
+    }
+    
+    /**
+     * Stop capture and processing threads and close the source. Frames still
+     * held by the render stage stay valid until released, and dispose must be
+     * called once they are. If the render stage holds none, the render ring
+     * is disposed here.
+     */
+    public void stop() {
+        running = false;
+        
+        processingThread.interrupt();
+        captureThread.interrupt();
+        try {
+            processingThread.join();
+            captureThread.join();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Pipeline.class.getName()).log(Level.WARNING, null, ex);
+            Thread.currentThread().interrupt();
+        }
+        
+        source.close();
+        extractor.release();
+        regionExtractor.release();
+        morphology.release();
+        captureRing.dispose(pool);
+        if (renderRing.getFreeCount() == renderRing.getCapacity()) {
+            dispose();
+        }
+        
+        Logger.getLogger(Pipeline.class.getName()).log(Level.INFO,
+                "Captured {0}, processed {1}, dropped {2} and rendered {3} frames",
+                new Object[]{capturedCount, processedCount, droppedCount.get(), renderedCount.get()});
+        Logger.getLogger(Pipeline.class.getName()).log(Level.INFO,
+                "Steady state allocated {0} bytes and {1} native buffers",
+                new Object[]{allocatedBytes, nativeAllocations});
+    }
+    
+    /**
+     * Give Mats of the render ring back to the pool. Call after stop, once
+     * the render stage has released or dropped every frame it held. Does
+     * nothing if already disposed.
+     */
+    public void dispose() {
+        if (renderDisposed.compareAndSet(false, true)) {
+            renderRing.dispose(pool);
+        }
+    }
+}
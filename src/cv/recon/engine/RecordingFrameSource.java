@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Mat;
+
+/**
+ * Frame source that records every frame read from another source with a
+ * FrameRecorder.
+ * <p/>
+ * Frames are written on the reading thread. If writing fails, the error is
+ * logged and recording stops, while frames keep coming from the source.
+ * Skipped frames are not recorded.
+ *
+ * @author Burhanuddin
+ */
+public class RecordingFrameSource implements FrameSource {
+    
+    private final FrameSource source;
+    private final FrameRecorder recorder;
+    private boolean recording;
+    
+    /**
+     * Construct recording source.
+     * @param source Source to read from, closed with this source
+     * @param recorder Recorder to write to, closed with this source
+     */
+    public RecordingFrameSource(FrameSource source, FrameRecorder recorder) {
+        this.source = source;
+        this.recorder = recorder;
+        recording = true;
+    }
+    
+    @Override
+    public boolean read(Mat dst) {
+        if (!source.read(dst)) {
+            return false;
+        }
+        
+        if (recording) {
+            try {
+                recorder.write(dst, source.getTimestamp());
+            } catch (IOException ex) {
+                Logger.getLogger(RecordingFrameSource.class.getName()).log(Level.SEVERE, null, ex);
+                recording = false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean skip() {
+        return source.skip();
+    }
+    
+    @Override
+    public long getTimestamp() {
+        return source.getTimestamp();
+    }
+    
+    @Override
+    public void close() {
+        source.close();
+        try {
+            recorder.close();
+        } catch (IOException ex) {
+            Logger.getLogger(RecordingFrameSource.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        Logger.getLogger(RecordingFrameSource.class.getName()).log(Level.INFO,
+                "Recorded {0} frames in {1} segments",
+                new Object[]{recorder.getFrameCount(), recorder.getSegmentCount()});
+    }
+}
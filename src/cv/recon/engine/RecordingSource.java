@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.opencv.core.Mat;
+
+/**
+ * Frame source replaying a recording of FrameRecorder.
+ * <p/>
+ * Segments are memory-mapped one at a time and frames are copied from the
+ * mapping straight into the Mat, without decoding. Frames are either
+ * returned as fast as they are asked for, or paced by their timestamps to
+ * replay in real time like a webcam. Timestamps are those of the recording,
+ * so a replay counts exactly like the capture it was recorded from.
+ * <p/>
+ * A directory replays every recording in it, one after another in order of
+ * file name, as a single stream. Timestamps restart with each recording, so
+ * give a single recording, by any of its segments, to replay it alone.
+ * <p/>
+ * A frame cut short at the end of a segment, as left by a crash while
+ * recording, ends that segment.
+ *
+ * @author Burhanuddin
+ */
+public class RecordingSource implements FrameSource {
+    
+    private static final Pattern SEGMENT = Pattern.compile("(.*)\\.\\d{5}\\" + FrameRecorder.EXTENSION);
+    
+    private final List<Path> segments;
+    private final boolean realTime;
+    private MappedByteBuffer buffer;
+    private int segment;
+    private byte[] pixels;
+    private long timestamp;
+    private long firstTimestamp;
+    private long startTime;
+    private boolean started;
+    
+    /**
+     * Open recording.
+     * @param path Directory of segments, any segment of a recording, or a
+     * single recording file
+     * @param realTime Whether to pace frames by their timestamps
+     * @throws IOException If no segment is found or the first one cannot be
+     * read
+     */
+    public RecordingSource(Path path, boolean realTime) throws IOException {
+        this.realTime = realTime;
+        segments = findSegments(path);
+        if (segments.isEmpty()) {
+            throw new IOException("No recording at " + path);
+        }
+        pixels = new byte[0];
+        segment = -1;
+        if (!nextSegment()) {
+            throw new IOException("Not a recording: " + segments.get(0));
+        }
+    }
+    
+    /**
+     * Check if a path looks like a recording.
+     * @param path Path to check
+     * @return True for directories and files with the recording extension
+     */
+    public static boolean isRecording(Path path) {
+        return Files.isDirectory(path) || path.toString().endsWith(FrameRecorder.EXTENSION);
+    }
+    
+    /**
+     * Find segments of a recording in order.
+     * @param path Directory, segment or single file
+     * @return Sorted segment paths
+     * @throws IOException If the directory cannot be listed
+     */
+    private static List<Path> findSegments(Path path) throws IOException {
+        List<Path> found = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + FrameRecorder.EXTENSION)) {
+                stream.forEach(found::add);
+            }
+        } else {
+            Matcher matcher = SEGMENT.matcher(path.getFileName().toString());
+            if (!matcher.matches()) {
+                if (Files.isRegularFile(path)) {
+                    found.add(path);
+                }
+                return found;
+            }
+            
+            String prefix = matcher.group(1);
+            Path dir = path.toAbsolutePath().getParent();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + FrameRecorder.EXTENSION)) {
+                for (Path sibling : stream) {
+                    Matcher m = SEGMENT.matcher(sibling.getFileName().toString());
+                    if (m.matches() && m.group(1).equals(prefix)) {
+                        found.add(sibling);
+                    }
+                }
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+    
+    /**
+     * Map the next segment, skipping segments that are not recordings.
+     * @return False if there is no more segment
+     */
+    private boolean nextSegment() {
+        buffer = null;
+        while (++segment < segments.size()) {
+            Path path = segments.get(segment);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (mapped.remaining() >= FrameRecorder.FILE_HEADER_SIZE
+                        && mapped.getInt() == FrameRecorder.MAGIC
+                        && mapped.getInt() == FrameRecorder.VERSION) {
+                    buffer = mapped;
+                    return true;
+                }
+                Logger.getLogger(RecordingSource.class.getName()).log(Level.WARNING,
+                        "Not a recording: {0}", path);
+            } catch (IOException ex) {
+                Logger.getLogger(RecordingSource.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Position on the header of the next complete frame, moving on to the next
+     * segment when the current one is exhausted.
+     * @return Payload length of the frame, -1 if there is no more frame
+     */
+    private int nextFrame() {
+        while (buffer != null) {
+            if (buffer.remaining() >= FrameRecorder.FRAME_HEADER_SIZE) {
+                int length = buffer.getInt(buffer.position() + FrameRecorder.FRAME_HEADER_SIZE - 4);
+                if (length >= 0 && buffer.remaining() - FrameRecorder.FRAME_HEADER_SIZE >= length) {
+                    return length;
+                }
+            }
+            nextSegment();
+        }
+        return -1;
+    }
+    
+    @Override
+    public boolean read(Mat dst) {
+        int length = nextFrame();
+        if (length < 0) {
+            return false;
+        }
+        
+        timestamp = buffer.getLong();
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        int type = buffer.getInt();
+        buffer.getInt();
+        
+        if (pixels.length != length) {
+            pixels = new byte[length];
+        }
+        buffer.get(pixels);
+        dst.create(rows, cols, type);
+        dst.put(0, 0, pixels);
+        
+        pace();
+        return true;
+    }
+    
+    @Override
+    public boolean skip() {
+        int length = nextFrame();
+        if (length < 0) {
+            return false;
+        }
+        
+        timestamp = buffer.getLong();
+        buffer.position(buffer.position() + FrameRecorder.FRAME_HEADER_SIZE - 8 + length);
+        
+        pace();
+        return true;
+    }
+    
+    /**
+     * Wait until the frame is due if replaying in real time.
+     */
+    private void pace() {
+        if (!realTime) {
+            return;
+        }
+        
+        if (!started) {
+            started = true;
+            firstTimestamp = timestamp;
+            startTime = System.nanoTime();
+            return;
+        }
+        
+        long due = startTime + (timestamp - firstTimestamp) * 1000000;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    @Override
+    public void close() {
+        buffer = null;
+        segment = segments.size();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.MatPool;
+import cv.recon.util.RectangleMerger;
+import cv.recon.util.RegionSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Find foreground blobs in a mask and merge overlapping ones into regions.
+ * <p/>
+ * Outer contours of the mask are reduced to bounding rectangles, which are
+ * then merged by a RectangleMerger. The contour search works on a pooled copy
+ * because it modifies its input.
+ *
+ * @author Burhanuddin
+ */
+public class RegionExtractor {
+    
+    private final MatPool pool;
+    private final RectangleMerger merger;
+    private final List<MatOfPoint> contours;
+    private final Mat hierarchy;
+    
+    /**
+     * Construct region extractor drawing buffers from the shared pool.
+     */
+    public RegionExtractor() {
+        this(MatPool.getShared());
+    }
+    
+    /**
+     * Construct region extractor.
+     * @param pool Pool to draw buffers from
+     */
+    public RegionExtractor(MatPool pool) {
+        this.pool = pool;
+        
+        merger = new RectangleMerger();
+        contours = new ArrayList<>();
+        hierarchy = new Mat();
+    }
+    
+    /**
+     * Replace regions with merged bounding rectangles of the blobs in a mask.
+     * @param mask Binary foreground mask
+     * @param regions Set to be filled
+     */
+    public void extract(Mat mask, RegionSet regions) {
+        regions.clear();
+        if (mask.empty()) {
+            return;
+        }
+        
+        Mat scratch = pool.acquire(mask);
+        mask.copyTo(scratch);
+        Imgproc.findContours(scratch, contours, hierarchy,
+                Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        pool.release(scratch);
+        
+        for (int i = 0; i < contours.size(); i++) {
+            MatOfPoint contour = contours.get(i);
+            Rect rect = Imgproc.boundingRect(contour);
+            regions.add(rect.x, rect.y, rect.width, rect.height);
+            contour.release();
+        }
+        contours.clear();
+        
+        merger.merge(regions);
+    }
+    
+    /**
+     * Release native buffers.
+     */
+    public void release() {
+        hierarchy.release();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Count repetition from a stream of samples such as non-zero pixel count.
+ * <p/>
+ * Samples are expected at a roughly constant rate. Implementations are not
+ * thread-safe, each counting thread has its own counter.
+ *
+ * @author Burhanuddin
+ */
+public interface RepetitionCounter {
+    
+    /**
+     * Forget every sample and set the count back to zero.
+     */
+    void reset();
+    
+    /**
+     * Add a sample and check for repetition.
+     * @param timestamp Timestamp of the sample in milliseconds
+     * @param value Sample value
+     * @return A boolean stating whether this sample increased the count
+     */
+    boolean addSample(long timestamp, double value);
+    
+    /**
+     * Return level the signal is compared to, drawn on the chart.
+     * @return Mid range value
+     */
+    double getMidRange();
+    
+    /**
+     * Return number of repetition counted since last reset.
+     * @return Repetition count
+     */
+    long getCount();
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Region of interest that follows the foreground.
+ * <p/>
+ * Without a user drawn region, the tracker learns one by taking the union of
+ * the foreground bounding boxes of the first frames and padding it. Once
+ * locked, the region only moves when the foreground reaches the guard band
+ * along an edge, or after it has stayed much smaller than the region for a
+ * while. This hysteresis keeps the region still during normal movement, as
+ * every move costs a new background model.
+ * <p/>
+ * Coordinates are in pixels of the processed frame, which is the full frame
+ * scaled by the processing scale of the ForegroundExtractor, if one is set.
+ *
+ * @author Burhanuddin
+ */
+public class RoiTracker {
+    
+    public static final int LEARNING_FRAMES = 30;
+    public static final int SHRINK_FRAMES = 60;
+    public static final double MARGIN = 0.25;
+    public static final double GUARD = 0.05;
+    public static final int MIN_PADDING = 16;
+    
+    private int frameWidth;
+    private int frameHeight;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private boolean locked;
+    private boolean userDefined;
+    private int learnedFrames;
+    private int smallFrames;
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+    
+    /**
+     * Start over, keeping a user drawn region if there is one, otherwise
+     * learning a new one.
+     */
+    public void restart() {
+        locked = userDefined;
+        learnedFrames = 0;
+        smallFrames = 0;
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        maxY = Integer.MIN_VALUE;
+    }
+    
+    /**
+     * Set frame size. The region is clamped to the frame.
+     * @param frameWidth Frame width
+     * @param frameHeight Frame height
+     */
+    public void setFrameSize(int frameWidth, int frameHeight) {
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        
+        if (locked) {
+            setRegion(x, y, x + width, y + height);
+            locked = width > 0 && height > 0;
+        }
+    }
+    
+    /**
+     * Lock to a user drawn region.
+     * @param x Left
+     * @param y Top
+     * @param width Width
+     * @param height Height
+     */
+    public void set(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        userDefined = true;
+        locked = true;
+        smallFrames = 0;
+        
+        if (frameWidth > 0) {
+            setFrameSize(frameWidth, frameHeight);
+        }
+    }
+    
+    /**
+     * Forget user drawn region and learn a new one.
+     */
+    public void clear() {
+        userDefined = false;
+        restart();
+    }
+    
+    /**
+     * Feed foreground bounding box of a frame.
+     * @param bx Left
+     * @param by Top
+     * @param bw Width, 0 if there is no foreground
+     * @param bh Height, 0 if there is no foreground
+     * @return Whether the region has been locked or moved
+     */
+    public boolean update(int bx, int by, int bw, int bh) {
+        boolean empty = bw <= 0 || bh <= 0;
+        
+        if (!locked) {
+            if (!empty) {
+                minX = Math.min(minX, bx);
+                minY = Math.min(minY, by);
+                maxX = Math.max(maxX, bx + bw);
+                maxY = Math.max(maxY, by + bh);
+            }
+            if (++learnedFrames < LEARNING_FRAMES || minX > maxX) {
+                return false;
+            }
+            
+            lockAround(minX, minY, maxX - minX, maxY - minY);
+            return locked;
+        }
+        
+        if (empty) {
+            return false;
+        }
+        
+        int guardX = (int) (width * GUARD);
+        int guardY = (int) (height * GUARD);
+        boolean nearEdge = (bx <= x + guardX && x > 0)
+                || (by <= y + guardY && y > 0)
+                || (bx + bw >= x + width - guardX && x + width < frameWidth)
+                || (by + bh >= y + height - guardY && y + height < frameHeight);
+        
+        boolean small = (long) bw * bh * 4 < (long) width * height;
+        smallFrames = small ? smallFrames + 1 : 0;
+        
+        if (nearEdge || smallFrames >= SHRINK_FRAMES) {
+            int oldX = x;
+            int oldY = y;
+            int oldWidth = width;
+            int oldHeight = height;
+            
+            lockAround(bx, by, bw, bh);
+            smallFrames = 0;
+            return x != oldX || y != oldY || width != oldWidth || height != oldHeight;
+        }
+        return false;
+    }
+    
+    /**
+     * Lock to a bounding box padded on every side.
+     */
+    private void lockAround(int bx, int by, int bw, int bh) {
+        int padX = (int) (bw * MARGIN) + MIN_PADDING;
+        int padY = (int) (bh * MARGIN) + MIN_PADDING;
+        setRegion(bx - padX, by - padY, bx + bw + padX, by + bh + padY);
+        locked = width > 0 && height > 0;
+    }
+    
+    /**
+     * Set region from its corners, clamped to the frame.
+     */
+    private void setRegion(int left, int top, int right, int bottom) {
+        x = Math.max(0, left);
+        y = Math.max(0, top);
+        width = Math.min(frameWidth, right) - x;
+        height = Math.min(frameHeight, bottom) - y;
+    }
+    
+    /**
+     * @return Whether the region is known, false while learning
+     */
+    public boolean isLocked() {
+        return locked;
+    }
+    
+    public int getX() {
+        return x;
+    }
+    
+    public int getY() {
+        return y;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+}
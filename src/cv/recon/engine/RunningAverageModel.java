@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Background model keeping an exponential running average of every pixel,
+ * in pure Java on primitive arrays.
+ * <p/>
+ * A pixel is foreground when any channel differs from the average by more
+ * than the threshold. Only background pixels update the average, so a
+ * subject standing still is absorbed slowly rather than at once. Costs one
+ * copy of the frame into Java, a subtraction, comparison and
+ * multiply-add per channel, and one copy of the mask back, which is several
+ * times cheaper than MOG2. Does not follow fast lighting changes.
+ *
+ * @author Burhanuddin
+ */
+public class RunningAverageModel implements BackgroundModel {
+    
+    public static final float DEFAULT_RATE = 0.02f;
+    public static final int DEFAULT_THRESHOLD = 30;
+    
+    private final float rate;
+    private final int threshold;
+    private byte[] pixels = new byte[0];
+    private byte[] maskPixels = new byte[0];
+    private float[] average = new float[0];
+    
+    /**
+     * Construct model learning at DEFAULT_RATE with DEFAULT_THRESHOLD.
+     */
+    public RunningAverageModel() {
+        this(DEFAULT_RATE, DEFAULT_THRESHOLD);
+    }
+    
+    /**
+     * Construct model.
+     * @param rate Weight of a new frame in the average, 1 / rate is about the
+     * history in frames
+     * @param threshold Least difference of a foreground pixel, 0 to 255
+     */
+    public RunningAverageModel(float rate, int threshold) {
+        this.rate = rate;
+        this.threshold = threshold;
+    }
+    
+    @Override
+    public void apply(Mat frame, Mat mask) {
+        int channels = frame.channels();
+        int count = frame.rows() * frame.cols();
+        int length = count * channels;
+        mask.create(frame.rows(), frame.cols(), CvType.CV_8UC1);
+        
+        if (pixels.length != length) {
+            pixels = new byte[length];
+            maskPixels = new byte[count];
+            average = new float[length];
+            frame.get(0, 0, pixels);
+            for (int i = 0; i < length; i++) {
+                average[i] = pixels[i] & 0xFF;
+            }
+            mask.put(0, 0, maskPixels);
+            return;
+        }
+        
+        frame.get(0, 0, pixels);
+        for (int p = 0, i = 0; p < count; p++, i += channels) {
+            boolean foreground = false;
+            for (int c = i; c < i + channels; c++) {
+                float difference = (pixels[c] & 0xFF) - average[c];
+                if (difference > threshold || difference < -threshold) {
+                    foreground = true;
+                }
+            }
+            
+            if (foreground) {
+                maskPixels[p] = (byte) 255;
+            } else {
+                maskPixels[p] = 0;
+                for (int c = i; c < i + channels; c++) {
+                    average[c] += rate * ((pixels[c] & 0xFF) - average[c]);
+                }
+            }
+        }
+        mask.put(0, 0, maskPixels);
+    }
+}
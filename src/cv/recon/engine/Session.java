@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.AllocationCounter;
+import cv.recon.util.JpegEncoder;
+import cv.recon.util.MatPool;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Mat;
+
+/**
+ * One counting station: a frame source with its own background model,
+ * morphology buffers and repetition counter.
+ * <p/>
+ * Frames are read by a capture thread of the session into a FrameRing, and
+ * processed by the worker pool of a SessionRuntime one frame per task. A
+ * session is never processed by two workers at the same time, so its state
+ * needs no locking.
+ *
+ * @author Burhanuddin
+ */
+public class Session {
+    
+    public static final int RING_CAPACITY = 4;
+    
+    private final String name;
+    private final FrameSource source;
+    private final MatPool pool;
+    private final FrameRing ring;
+    private final ForegroundExtractor extractor;
+    private RepetitionCounter counter;
+    private final AtomicBoolean scheduled;
+    private final AtomicBoolean closed;
+    private final CountDownLatch finished;
+    private SignalListener signalListener;
+    private JpegEncoder encoder;
+    private Signal signal = Signal.COUNT;
+    private SessionRuntime runtime;
+    private Thread captureThread;
+    private volatile boolean running;
+    private volatile boolean captureDone;
+    private volatile long frames;
+    private volatile long count;
+    private volatile long totalLatency;
+    private volatile long maxLatency;
+    private volatile long allocatedBytes;
+    private volatile long nativeAllocations;
+    private volatile long startTime;
+    private volatile long endTime;
+    
+    /**
+     * Construct session.
+     * @param name Name used in reports and thread names
+     * @param source Frame source, closed when the session finishes
+     */
+    public Session(String name, FrameSource source) {
+        this.name = name;
+        this.source = source;
+        
+        pool = MatPool.getShared();
+        ring = new FrameRing(RING_CAPACITY);
+        extractor = new ForegroundExtractor(pool);
+        counter = new MidRangeCounter();
+        scheduled = new AtomicBoolean();
+        closed = new AtomicBoolean();
+        finished = new CountDownLatch(1);
+    }
+    
+    /**
+     * Process frames at a fixed fraction of their size. Takes effect on next
+     * start.
+     * @param scale Scale of width and height, for example 0.5 or 0.25
+     */
+    public void setProcessingScale(double scale) {
+        extractor.setProcessingScale(scale);
+    }
+    
+    /**
+     * Process frames at the largest size within a number of pixels. Takes
+     * effect on next start.
+     * @param pixels Pixel budget, 0 to use the processing scale instead
+     */
+    public void setPixelBudget(long pixels) {
+        extractor.setPixelBudget(pixels);
+    }
+    
+    /**
+     * Restrict processing to a region of interest learned from the foreground.
+     * Takes effect on next start.
+     * @param roiTracking Whether to track a region of interest
+     */
+    public void setRoiTracking(boolean roiTracking) {
+        extractor.setRoiTracking(roiTracking);
+    }
+    
+    /**
+     * Set feature of the foreground mask to count repetition on. Call before
+     * start.
+     * @param signal Repetition signal, COUNT by default
+     */
+    public void setSignal(Signal signal) {
+        this.signal = signal;
+    }
+    
+    /**
+     * Set kind of background model. Takes effect on next start.
+     * @param modelType Kind of background model, MOG2 by default
+     */
+    public void setBackgroundModel(BackgroundModelType modelType) {
+        extractor.setBackgroundModel(modelType);
+    }
+    
+    /**
+     * Set how repetition is counted. Call before start.
+     * @param counterType Kind of counter, MID_RANGE by default
+     */
+    public void setCounter(CounterType counterType) {
+        counter = counterType.create();
+    }
+    
+    /**
+     * Set receiver of the repetition signal, called from worker threads.
+     * @param signalListener Signal listener, may be null
+     */
+    public void setSignalListener(SignalListener signalListener) {
+        this.signalListener = signalListener;
+    }
+    
+    /**
+     * Set encoder of the processed output, called from worker threads. The
+     * output is only produced for frames the encoder is due for.
+     * @param encoder Output encoder, may be null
+     */
+    public void setEncoder(JpegEncoder encoder) {
+        this.encoder = encoder;
+    }
+    
+    /**
+     * Called by SessionRuntime to start capturing, using the first frame as
+     * background frame.
+     * @param runtime Runtime that processes this session
+     */
+    void start(SessionRuntime runtime) {
+        this.runtime = runtime;
+        running = true;
+        startTime = System.nanoTime();
+        
+        extractor.start();
+        counter.reset();
+        
+        captureThread = new Thread(this::capture, "capture-" + name);
+        captureThread.setDaemon(true);
+        captureThread.start();
+    }
+    
+    /**
+     * Capture stage. Read frames until the source is exhausted or the session
+     * is stopped, scheduling the session for each published frame.
+     */
+    private void capture() {
+        long sequence = 0;
+        
+        try {
+            while (running) {
+                Frame frame = ring.acquire();
+                
+                if (!source.read(frame.getSource())) {
+                    ring.release(frame);
+                    break;
+                }
+                frame.setTimestamp(source.getTimestamp());
+                frame.setSequence(sequence++);
+                
+                ring.publish(frame);
+                runtime.schedule(this);
+            }
+        } catch (InterruptedException ex) {
+            // stopped while waiting for a free frame
+        } finally {
+            captureDone = true;
+            runtime.schedule(this);
+        }
+    }
+    
+    /**
+     * Mark session as scheduled.
+     * @return False if the session is already waiting for or running on a
+     * worker
+     */
+    boolean markScheduled() {
+        return scheduled.compareAndSet(false, true);
+    }
+    
+    /**
+     * Worker task. Process at most one frame, then either reschedule the
+     * session behind the other sessions or finish it. Only the worker holding
+     * the scheduled flag finishes the session, and the flag is never cleared
+     * afterwards.
+     */
+    void runQuantum() {
+        try {
+            Frame frame = ring.poll();
+            if (frame != null) {
+                try {
+                    process(frame);
+                } finally {
+                    ring.release(frame);
+                }
+            }
+        } catch (RuntimeException ex) {
+            Logger.getLogger(Session.class.getName()).log(Level.SEVERE, name, ex);
+            stop();
+        } finally {
+            // read before depth, all frames are published once capture is done
+            boolean done = captureDone;
+            if (done && ring.getDepth() == 0) {
+                // still scheduled, so no other worker can be processing
+                finish();
+            } else {
+                scheduled.set(false);
+                
+                // capture may have published or ended while the flag was held
+                if (captureDone || ring.getDepth() > 0) {
+                    runtime.schedule(this);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Subtract background and count repetition of a frame.
+     * @param frame Captured frame
+     */
+    private void process(Frame frame) {
+        long allocationStart = AllocationCounter.getAllocatedBytes();
+        long nativeStart = pool.getAllocationCount();
+        long frameStart = System.nanoTime();
+        
+        Mat output = null;
+        if (encoder != null && encoder.isDue()) {
+            frame.prepareOutput(pool);
+            output = frame.getOutput();
+        }
+        double value;
+        if (signal == Signal.COUNT) {
+            value = extractor.apply(frame.getSource(), output);
+        } else {
+            FrameFeatures features = frame.getFeatures();
+            extractor.apply(frame.getSource(), output, features);
+            value = features.get(signal);
+        }
+        boolean repetition = counter.addSample(frame.getTimestamp(), value);
+        
+        long latency = System.nanoTime() - frameStart;
+        totalLatency += latency;
+        if (latency > maxLatency) {
+            maxLatency = latency;
+        }
+        if (frames >= Pipeline.WARM_UP_FRAMES) {
+            allocatedBytes += AllocationCounter.since(allocationStart);
+            nativeAllocations += pool.getAllocationCount() - nativeStart;
+        }
+        frames++;
+        count = counter.getCount();
+        
+        if (signalListener != null) {
+            signalListener.sampleAdded(frame.getTimestamp(), value,
+                    counter.getMidRange(), counter.getCount(), repetition);
+        }
+        if (output != null) {
+            encoder.offer(output);
+        }
+    }
+    
+    /**
+     * Release resources once every captured frame is processed.
+     */
+    private void finish() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        
+        endTime = System.nanoTime();
+        source.close();
+        extractor.release();
+        ring.dispose(pool);
+        finished.countDown();
+    }
+    
+    /**
+     * Stop capturing. Frames already captured are still processed.
+     */
+    public void stop() {
+        running = false;
+        captureThread.interrupt();
+    }
+    
+    /**
+     * Wait until the source is exhausted or the session is stopped, and every
+     * captured frame is processed.
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitFinished() throws InterruptedException {
+        finished.await();
+    }
+    
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return Value of System.nanoTime when the session started
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    /**
+     * Return number of frames processed so far.
+     * @return Processed frame count
+     */
+    public long getFrames() {
+        return frames;
+    }
+    
+    /**
+     * Return repetition count so far.
+     * @return Repetition count
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Return number of frames captured but not yet processed.
+     * @return Queue depth
+     */
+    public int getQueueDepth() {
+        return ring.getDepth();
+    }
+    
+    /**
+     * Return result of the session so far, or of the whole run once finished.
+     * Native allocations are counted pool-wide while this session's frames
+     * are processed.
+     * @return Session result
+     */
+    public BatchResult getResult() {
+        long end = isFinished() ? endTime : System.nanoTime();
+        return new BatchResult(frames, count, end - startTime, totalLatency, maxLatency,
+                allocatedBytes, nativeAllocations);
+    }
+}
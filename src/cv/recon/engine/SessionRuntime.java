@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run many sessions concurrently on a fixed pool of worker threads.
+ * <p/>
+ * Each worker task processes a single frame of a single session, and a
+ * session with more frames waiting is put back at the end of the shared
+ * queue. Sessions are therefore served round-robin, and a fast source cannot
+ * starve the others.
+ *
+ * @author Burhanuddin
+ */
+public class SessionRuntime {
+    
+    private final ExecutorService workers;
+    private final List<Session> sessions;
+    private final Map<Session, long[]> lastReport;
+    private ScheduledExecutorService reporter;
+    
+    /**
+     * Construct runtime.
+     * @param threads Number of worker threads
+     */
+    public SessionRuntime(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, (Runnable r) -> {
+            Thread thread = new Thread(r, "worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        sessions = new CopyOnWriteArrayList<>();
+        lastReport = new HashMap<>();
+    }
+    
+    /**
+     * Add a session and start it.
+     * @param session Session that has not been started
+     */
+    public void add(Session session) {
+        sessions.add(session);
+        session.start(this);
+    }
+    
+    /**
+     * Queue a session for processing unless it is already queued or running.
+     * @param session Session with frames to process
+     */
+    void schedule(Session session) {
+        if (session.markScheduled()) {
+            workers.execute(session::runQuantum);
+        }
+    }
+    
+    public List<Session> getSessions() {
+        return sessions;
+    }
+    
+    /**
+     * Wait until every session has finished.
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitCompletion() throws InterruptedException {
+        for (Session session : sessions) {
+            session.awaitFinished();
+        }
+    }
+    
+    /**
+     * Print a throughput report periodically.
+     * @param period Time between reports
+     * @param unit Unit of period
+     * @param out Stream to print to
+     */
+    public synchronized void startReporting(long period, TimeUnit unit, PrintStream out) {
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+                Thread thread = new Thread(r, "reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> out.print(report()), period, period, unit);
+        }
+    }
+    
+    /**
+     * Build a report with one line per session giving frames per second since
+     * the previous report, and a total line.
+     * @return Report text
+     */
+    public synchronized String report() {
+        StringBuilder builder = new StringBuilder();
+        long now = System.nanoTime();
+        double totalFps = 0;
+        
+        for (Session session : sessions) {
+            long frames = session.getFrames();
+            long[] last = lastReport.get(session);
+            if (last == null) {
+                last = new long[]{0, session.getStartTime()};
+                lastReport.put(session, last);
+            }
+            
+            double fps = (frames - last[0]) * 1e9 / (now - last[1]);
+            last[0] = frames;
+            last[1] = now;
+            totalFps += fps;
+            
+            builder.append(String.format(Locale.ROOT, "%s: fps=%.1f frames=%d count=%d queue=%d%s%n",
+                    session.getName(), fps, frames, session.getCount(), session.getQueueDepth(),
+                    session.isFinished() ? " finished" : ""));
+        }
+        builder.append(String.format(Locale.ROOT, "total: sessions=%d fps=%.1f%n", sessions.size(), totalFps));
+        
+        return builder.toString();
+    }
+    
+    /**
+     * Stop every session, wait for them to finish and stop the workers.
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        synchronized (this) {
+            if (reporter != null) {
+                reporter.shutdownNow();
+                reporter = null;
+            }
+        }
+        
+        for (Session session : sessions) {
+            session.stop();
+        }
+        awaitCompletion();
+        
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Feature of the foreground mask used as repetition signal.
+ *
+ * @author Burhanuddin
+ */
+public enum Signal {
+    
+    /** Non-zero pixel count, the amount of movement. */
+    COUNT,
+    
+    /** Horizontal centroid, for side to side movement. */
+    CENTROID_X,
+    
+    /** Vertical centroid, for squats and push-ups. */
+    CENTROID_Y,
+    
+    /** Bounding box width, for jumping jacks. */
+    WIDTH,
+    
+    /** Bounding box height, for jumps. */
+    HEIGHT,
+    
+    /** Standard deviation of x, a width less sensitive to stray pixels. */
+    SPREAD_X,
+    
+    /** Standard deviation of y, a height less sensitive to stray pixels. */
+    SPREAD_Y
+}
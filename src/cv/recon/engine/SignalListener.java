@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Receive the repetition signal of every processed frame.
+ *
+ * @author Burhanuddin
+ */
+public interface SignalListener {
+    
+    /**
+     * Called from processing thread once the sample of a frame has been
+     * counted. Must not block.
+     * @param timestamp Capture timestamp of the frame in milliseconds
+     * @param value Sample value, e.g. non-zero pixel count
+     * @param midRange Mid range of the counter window
+     * @param count Repetition count including this sample
+     * @param repetition A boolean stating whether this sample completed a
+     * repetition
+     */
+    void sampleAdded(long timestamp, double value, double midRange, long count, boolean repetition);
+    
+    /**
+     * Pass every sample to this listener and then to another.
+     * @param next Listener called after this one
+     * @return Composed listener
+     */
+    default SignalListener andThen(SignalListener next) {
+        return (timestamp, value, midRange, count, repetition) -> {
+            sampleAdded(timestamp, value, midRange, count, repetition);
+            next.sampleAdded(timestamp, value, midRange, count, repetition);
+        };
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+/**
+ * Instrumented stages of the pipeline.
+ *
+ * @author Burhanuddin
+ */
+public enum Stage {
+    
+    /** Reading and decoding a frame from the source. */
+    CAPTURE,
+    
+    /**
+     * Scaling to the processing size, if a processing scale or pixel budget
+     * is set, and applying the BackgroundModel.
+     */
+    SUBTRACTION,
+    
+    /** Erode and dilate of the foreground mask. */
+    MORPHOLOGY,
+    
+    /** Copying the foreground into the output, upscaling the mask if needed. */
+    OUTPUT,
+    
+    /** Counting non-zero pixels of the mask and tracking the ROI. */
+    COUNT,
+    
+    /** Feeding the repetition counter. */
+    SIGNAL,
+    
+    /** Extracting foreground regions. */
+    REGIONS,
+    
+    /** Whole processing stage of a frame. */
+    PROCESSING,
+    
+    /** Updating input and output views. */
+    RENDER,
+    
+    /**
+     * Refreshing the chart: taking new samples from the history, downsampling
+     * them and updating the chart nodes.
+     */
+    CHART,
+    
+    /** From end of capture to end of render. */
+    END_TO_END
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import cv.recon.util.LatencyHistogram;
+
+/**
+ * Latency histogram of every Stage. Stages record into it from their own
+ * threads without locking.
+ *
+ * @author Burhanuddin
+ */
+public class StageStatistics {
+    
+    private final LatencyHistogram[] histograms;
+    
+    /**
+     * Construct empty statistics.
+     */
+    public StageStatistics() {
+        Stage[] stages = Stage.values();
+        histograms = new LatencyHistogram[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+    
+    /**
+     * Record latency of a stage.
+     * @param stage Stage
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+    
+    /**
+     * Record latency of a stage from its start time until now.
+     * @param stage Stage
+     * @param start Start time from System.nanoTime
+     * @return Current time, to be used as start of the next stage
+     */
+    public long recordSince(Stage stage, long start) {
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].record(now - start);
+        return now;
+    }
+    
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+    
+    /**
+     * Clear every histogram.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.engine;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.VideoCapture;
+
+/**
+ * Frame source backed by OpenCV VideoCapture, reading either from a capture
+ * device or from a video file.
+ *
+ * @author Burhanuddin
+ */
+public class VideoCaptureSource implements FrameSource {
+    
+    /**
+     * Property of VideoCapture.get giving the position in a video file in
+     * milliseconds. The 2.4 Java bindings do not define it.
+     */
+    private static final int CV_CAP_PROP_POS_MSEC = 0;
+    
+    private final VideoCapture vid;
+    private final boolean isFile;
+    private long timestamp;
+    
+    /**
+     * Open capture device.
+     * @param device Device index, 0 for default webcam
+     */
+    public VideoCaptureSource(int device) {
+        vid = new VideoCapture();
+        vid.open(device);
+        isFile = false;
+    }
+    
+    /**
+     * Open video file.
+     * @param filename Path to video file
+     */
+    public VideoCaptureSource(String filename) {
+        vid = new VideoCapture();
+        vid.open(filename);
+        isFile = true;
+    }
+    
+    /**
+     * Check if the device or file was opened successfully.
+     * @return A boolean stating whether the source is opened
+     */
+    public boolean isOpened() {
+        return vid.isOpened();
+    }
+    
+    @Override
+    public boolean read(Mat dst) {
+        if (!vid.read(dst) || dst.empty()) {
+            return false;
+        }
+        
+        if (isFile) {
+            timestamp = (long) vid.get(CV_CAP_PROP_POS_MSEC);
+        } else {
+            timestamp = System.nanoTime() / 1000000;
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean skip() {
+        return vid.grab();
+    }
+    
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    @Override
+    public void close() {
+        if (vid.isOpened()) {
+            vid.release();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.log;
+
+import cv.recon.engine.SignalListener;
+import cv.recon.util.Position;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only binary log of every sample of the repetition signal, read back
+ * with SessionLogReader.
+ * <p/>
+ * The file starts with a header of magic number, version, record size and
+ * creation time, followed by fixed size records of timestamp, sample value,
+ * mid range, repetition count, record type and position. A sample that
+ * completes a repetition is stored as a REPETITION record, every other
+ * sample as a SAMPLE record. The position is derived the way
+ * MidRangeCounter does, from the sample and the mid range.
+ * <p/>
+ * The file is written through memory-mapped chunks, which extend it with
+ * zeros, so the log ends at the first record of type 0. An existing log is
+ * appended to.
+ * <p/>
+ * Timestamps are stored in milliseconds since the epoch, so that they keep
+ * increasing across appends. Source timestamps, whose origin differs per
+ * process or per clip, are shifted so that the first sample of this log falls
+ * at the time it is added, or just after the last record already in the
+ * file, and never go backwards.
+ * <p/>
+ * Samples are handed from the counting thread to a writer thread through a
+ * single producer ring of primitive arrays, and written in batches every
+ * FLUSH_PERIOD milliseconds, or as soon as the ring is half full. Adding a
+ * sample never blocks nor allocates. If the writer falls a whole ring behind,
+ * samples are dropped and counted.
+ *
+ * @author Burhanuddin
+ */
+public class SessionLog implements SignalListener {
+    
+    public static final int MAGIC = 0x43564c47;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 32;
+    public static final byte SAMPLE = 1;
+    public static final byte REPETITION = 2;
+    public static final String EXTENSION = ".slog";
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final long FLUSH_PERIOD = 100;
+    
+    static final int TYPE_OFFSET = 28;
+    private static final int CHUNK_SIZE = RECORD_SIZE << 17;
+    
+    private final FileChannel channel;
+    private final int mask;
+    private final long[] timestamps;
+    private final double[] values;
+    private final double[] midRanges;
+    private final long[] counts;
+    private final boolean[] repetitions;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicLong dropped;
+    private final Thread writer;
+    private MappedByteBuffer chunk;
+    private volatile long position;
+    private volatile boolean running;
+    private long lastTimestamp;
+    private long timestampOffset;
+    private boolean anchored;
+    
+    /**
+     * Open log with a ring of DEFAULT_CAPACITY samples.
+     * @param file Log file, created if missing
+     * @throws IOException If the file cannot be opened or is not a log
+     */
+    public SessionLog(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Open log and start its writer thread.
+     * @param file Log file, created if missing
+     * @param capacity Number of samples the ring holds, rounded up to a power
+     * of two
+     * @throws IOException If the file cannot be opened or is not a log
+     */
+    public SessionLog(Path file, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        timestamps = new long[size];
+        values = new double[size];
+        midRanges = new double[size];
+        counts = new long[size];
+        repetitions = new boolean[size];
+        head = new AtomicLong();
+        tail = new AtomicLong();
+        dropped = new AtomicLong();
+        
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                writeHeader();
+                position = HEADER_SIZE;
+            } else {
+                checkHeader(channel, file);
+                position = findEnd();
+                if (position > HEADER_SIZE) {
+                    lastTimestamp = readTimestamp(position - RECORD_SIZE);
+                }
+            }
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, CHUNK_SIZE);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        
+        running = true;
+        writer = new Thread(this::write, "session-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * Write header of a new log.
+     * @throws IOException If writing fails
+     */
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(RECORD_SIZE);
+        header.putInt(0);
+        header.putLong(System.currentTimeMillis());
+        header.rewind();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+    
+    /**
+     * Check header of an existing log.
+     * @param channel Channel of the log
+     * @param file Log file, for the error message
+     * @return Creation time of the log
+     * @throws IOException If the file is not a log of this version
+     */
+    static long checkHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read whole header
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE
+                || header.getInt() != MAGIC
+                || header.getInt() != VERSION
+                || header.getInt() != RECORD_SIZE) {
+            throw new IOException("Not a session log: " + file);
+        }
+        header.getInt();
+        return header.getLong();
+    }
+    
+    /**
+     * Find end of an existing log by binary search for the first record of
+     * type 0, as records are written one after another.
+     * @return File offset of the first free record
+     * @throws IOException If reading fails
+     */
+    private long findEnd() throws IOException {
+        ByteBuffer type = ByteBuffer.allocate(1);
+        long low = 0;
+        long high = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            type.clear();
+            channel.read(type, HEADER_SIZE + mid * RECORD_SIZE + TYPE_OFFSET);
+            if (type.get(0) != 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return HEADER_SIZE + low * RECORD_SIZE;
+    }
+    
+    /**
+     * Read timestamp of a record of an existing log.
+     * @param offset File offset of the record
+     * @return Timestamp in milliseconds
+     * @throws IOException If reading fails
+     */
+    private long readTimestamp(long offset) throws IOException {
+        ByteBuffer timestamp = ByteBuffer.allocate(8);
+        while (timestamp.hasRemaining() && channel.read(timestamp, offset + timestamp.position()) >= 0) {
+            // read whole timestamp
+        }
+        return timestamp.getLong(0);
+    }
+    
+    /**
+     * Queue a sample for writing. Called from the counting thread, one thread
+     * at a time.
+     */
+    @Override
+    public void sampleAdded(long timestamp, double value, double midRange, long count, boolean repetition) {
+        long h = head.get();
+        long queued = h - tail.get();
+        if (queued > mask) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (queued == (mask + 1) / 2) {
+            LockSupport.unpark(writer);
+        }
+        
+        if (!anchored) {
+            timestampOffset = Math.max(System.currentTimeMillis(), lastTimestamp + 1) - timestamp;
+            anchored = true;
+        }
+        lastTimestamp = Math.max(lastTimestamp, timestamp + timestampOffset);
+        
+        int i = (int) (h & mask);
+        timestamps[i] = lastTimestamp;
+        values[i] = value;
+        midRanges[i] = midRange;
+        counts[i] = count;
+        repetitions[i] = repetition;
+        head.lazySet(h + 1);
+    }
+    
+    /**
+     * Writer thread. Drain the ring every flush period until closed.
+     */
+    private void write() {
+        try {
+            while (running) {
+                drain();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_PERIOD));
+            }
+            drain();
+        } catch (IOException ex) {
+            Logger.getLogger(SessionLog.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Write every queued sample.
+     * @throws IOException If the next chunk cannot be mapped
+     */
+    private void drain() throws IOException {
+        long t = tail.get();
+        long h = head.get();
+        long offset = position;
+        
+        for (; t < h; t++) {
+            if (chunk.remaining() < RECORD_SIZE) {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, offset, CHUNK_SIZE);
+            }
+            
+            int i = (int) (t & mask);
+            chunk.putLong(timestamps[i]);
+            chunk.putDouble(values[i]);
+            chunk.putDouble(midRanges[i]);
+            chunk.putInt((int) counts[i]);
+            chunk.put(repetitions[i] ? REPETITION : SAMPLE);
+            chunk.put((byte) (values[i] > midRanges[i]
+                    ? Position.AWAY_FROM_INITIAL : Position.CLOSE_TO_INITIAL).ordinal());
+            chunk.putShort((short) 0);
+            offset += RECORD_SIZE;
+            
+            tail.lazySet(t + 1);
+        }
+        position = offset;
+    }
+    
+    /**
+     * @return Number of records in the log, including those written before
+     * it was opened
+     */
+    public long getRecordCount() {
+        return (position - HEADER_SIZE) / RECORD_SIZE;
+    }
+    
+    /**
+     * @return Number of samples dropped because the writer fell behind
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+    
+    /**
+     * Write every queued sample, stop the writer thread and close the file.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(SessionLog.class.getName()).log(Level.WARNING, null, ex);
+            Thread.currentThread().interrupt();
+        }
+        
+        try {
+            chunk.force();
+            channel.close();
+        } catch (IOException ex) {
+            Logger.getLogger(SessionLog.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        if (dropped.get() > 0) {
+            Logger.getLogger(SessionLog.class.getName()).log(Level.WARNING,
+                    "Dropped {0} samples", dropped.get());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.log;
+
+import cv.recon.util.Position;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read a SessionLog, which may still be written to.
+ * <p/>
+ * The file is memory-mapped read-only in regions of up to REGION_SIZE bytes,
+ * and records are read with absolute gets, so scanning millions of records
+ * neither copies nor allocates. Records are passed to a Visitor as primitive
+ * values.
+ * <p/>
+ * Searching by time and counting per period expect timestamps to increase
+ * through the log, as SessionLog keeps them, in milliseconds since the epoch.
+ *
+ * @author Burhanuddin
+ */
+public class SessionLogReader {
+    
+    private static final int REGION_RECORDS = 1 << 25;
+    private static final long REGION_SIZE = (long) REGION_RECORDS * SessionLog.RECORD_SIZE;
+    private static final Position[] POSITIONS = Position.values();
+    
+    /**
+     * Receive records of a log.
+     */
+    public interface Visitor {
+        
+        /**
+         * Called for every record in order.
+         * @param timestamp Timestamp of the sample in milliseconds since the
+         * epoch
+         * @param value Sample value
+         * @param midRange Mid range of the counter window
+         * @param count Repetition count including this sample
+         * @param position Position of the sample
+         * @param repetition A boolean stating whether this sample completed a
+         * repetition
+         */
+        void visit(long timestamp, double value, double midRange, long count,
+                Position position, boolean repetition);
+    }
+    
+    private final MappedByteBuffer[] regions;
+    private final long creationTime;
+    private final long recordCount;
+    
+    /**
+     * Open log and map its records as they are now. Records written later are
+     * not seen.
+     * @param file Log file
+     * @throws IOException If the file cannot be read or is not a log
+     */
+    public SessionLogReader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            creationTime = SessionLog.checkHeader(channel, file);
+            
+            long records = (channel.size() - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE;
+            int regionCount = (int) ((records + REGION_RECORDS - 1) / REGION_RECORDS);
+            regions = new MappedByteBuffer[regionCount];
+            for (int i = 0; i < regionCount; i++) {
+                long start = SessionLog.HEADER_SIZE + i * REGION_SIZE;
+                long size = Math.min(REGION_SIZE, SessionLog.HEADER_SIZE + records * SessionLog.RECORD_SIZE - start);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+            recordCount = findEnd(records);
+        }
+    }
+    
+    /**
+     * Find the first record of type 0 by binary search.
+     * @param records Number of records the file has room for
+     * @return Number of records written
+     */
+    private long findEnd(long records) {
+        long low = 0;
+        long high = records;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (getType(mid) != 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * @return Time the log was created, in milliseconds since the epoch
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+    
+    /**
+     * @return Number of records in the log
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+    
+    private MappedByteBuffer region(long index) {
+        return regions[(int) (index / REGION_RECORDS)];
+    }
+    
+    private int offset(long index) {
+        return (int) (index % REGION_RECORDS) * SessionLog.RECORD_SIZE;
+    }
+    
+    private byte getType(long index) {
+        return region(index).get(offset(index) + SessionLog.TYPE_OFFSET);
+    }
+    
+    /**
+     * Return timestamp of a record.
+     * @param index Record index
+     * @return Timestamp in milliseconds
+     */
+    public long getTimestamp(long index) {
+        return region(index).getLong(offset(index));
+    }
+    
+    /**
+     * Find the first record at or after a time, by binary search.
+     * @param timestamp Timestamp in milliseconds
+     * @return Record index, the record count if every record is earlier
+     */
+    public long find(long timestamp) {
+        long low = 0;
+        long high = recordCount;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Pass every record to a visitor.
+     * @param visitor Visitor
+     */
+    public void scan(Visitor visitor) {
+        scan(0, recordCount, visitor);
+    }
+    
+    /**
+     * Pass a range of records to a visitor.
+     * @param from Index of the first record
+     * @param to Index after the last record
+     * @param visitor Visitor
+     */
+    public void scan(long from, long to, Visitor visitor) {
+        for (long index = from; index < to; index++) {
+            MappedByteBuffer buffer = region(index);
+            int offset = offset(index);
+            visitor.visit(buffer.getLong(offset),
+                    buffer.getDouble(offset + 8),
+                    buffer.getDouble(offset + 16),
+                    buffer.getInt(offset + 24),
+                    POSITIONS[buffer.get(offset + SessionLog.TYPE_OFFSET + 1)],
+                    buffer.get(offset + SessionLog.TYPE_OFFSET) == SessionLog.REPETITION);
+        }
+    }
+    
+    /**
+     * Count repetitions in consecutive periods, such as repetitions per minute.
+     * Only the type byte and timestamp of each record are read.
+     * @param periodMillis Length of a period in milliseconds
+     * @return Repetitions per period, starting at the first record
+     * @throws IllegalArgumentException If the period is not positive or the
+     * log spans too many periods
+     */
+    public long[] countRepetitions(long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis);
+        }
+        if (recordCount == 0) {
+            return new long[0];
+        }
+        
+        long start = getTimestamp(0);
+        long periods = Math.max(0, getTimestamp(recordCount - 1) - start) / periodMillis + 1;
+        if (periods > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many periods of " + periodMillis + " ms");
+        }
+        long[] counts = new long[(int) periods];
+        for (long index = 0; index < recordCount; index++) {
+            if (getType(index) == SessionLog.REPETITION) {
+                long period = (getTimestamp(index) - start) / periodMillis;
+                if (period >= 0 && period < counts.length) {
+                    counts[(int) period]++;
+                }
+            }
+        }
+        return counts;
+    }
+}
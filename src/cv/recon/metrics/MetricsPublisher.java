@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.metrics;
+
+import cv.recon.engine.Pipeline;
+import cv.recon.engine.Stage;
+import cv.recon.engine.StageStatistics;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publish metrics of a pipeline as MXBeans and optionally as a periodic log
+ * line.
+ * <p/>
+ * Registers <code>cv.recon:type=Pipeline</code> and one
+ * <code>cv.recon:type=Stage,name=&lt;stage&gt;</code> per Stage in the
+ * platform MBean server, so they can be read with jconsole or any JMX client.
+ * Rates are updated once per UPDATE_PERIOD by a daemon thread.
+ *
+ * @author Burhanuddin
+ */
+public class MetricsPublisher {
+    
+    public static final String DOMAIN = "cv.recon";
+    public static final long UPDATE_PERIOD = 1;
+    
+    private final PipelineMetrics pipelineMetrics;
+    private final StageMetrics[] stageMetrics;
+    private final List<ObjectName> names;
+    private ScheduledExecutorService scheduler;
+    private long lastUpdate;
+    private long lastLog;
+    private long logPeriod;
+    
+    /**
+     * Construct metrics publisher.
+     * @param pipeline Pipeline to publish metrics of
+     */
+    public MetricsPublisher(Pipeline pipeline) {
+        pipelineMetrics = new PipelineMetrics(pipeline);
+        
+        StageStatistics statistics = pipeline.getStatistics();
+        Stage[] stages = Stage.values();
+        stageMetrics = new StageMetrics[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            stageMetrics[i] = new StageMetrics(statistics.get(stages[i]));
+        }
+        
+        names = new ArrayList<>();
+    }
+    
+    /**
+     * Register MXBeans and start updating rates.
+     * @param logPeriod Period of the log line, 0 for no log line
+     * @param unit Unit of log period
+     */
+    public synchronized void start(long logPeriod, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=Pipeline"), pipelineMetrics);
+            Stage[] stages = Stage.values();
+            for (int i = 0; i < stages.length; i++) {
+                register(server, new ObjectName(DOMAIN + ":type=Stage,name="
+                        + stages[i].name().toLowerCase(Locale.ROOT)), stageMetrics[i]);
+            }
+        } catch (JMException ex) {
+            Logger.getLogger(MetricsPublisher.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        this.logPeriod = unit.toNanos(logPeriod);
+        lastUpdate = System.nanoTime();
+        lastLog = lastUpdate;
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::update, UPDATE_PERIOD, UPDATE_PERIOD, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Register an MXBean, replacing one left behind by an earlier pipeline.
+     */
+    private void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+        names.add(name);
+    }
+    
+    /**
+     * Update rates and log if the log period has passed.
+     */
+    private void update() {
+        long now = System.nanoTime();
+        long elapsed = now - lastUpdate;
+        lastUpdate = now;
+        
+        pipelineMetrics.update(elapsed);
+        for (StageMetrics metrics : stageMetrics) {
+            metrics.update(elapsed);
+        }
+        
+        if (logPeriod > 0 && now - lastLog >= logPeriod) {
+            lastLog = now;
+            Logger.getLogger(MetricsPublisher.class.getName()).log(Level.INFO, format());
+        }
+    }
+    
+    /**
+     * Build a single line with frame rates, queue depths, native memory and
+     * latency of every stage that has recorded anything.
+     * @return Metrics line
+     */
+    public String format() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT,
+                "fps capture=%.1f processed=%.1f dropped=%.1f rendered=%.1f"
+                + " queue capture=%d render=%d native=%d KB policy=%s",
+                pipelineMetrics.getCaptureRate(), pipelineMetrics.getProcessingRate(),
+                pipelineMetrics.getDropRate(), pipelineMetrics.getRenderRate(),
+                pipelineMetrics.getCaptureQueueDepth(), pipelineMetrics.getRenderQueueDepth(),
+                pipelineMetrics.getNativeMatBytes() / 1024, pipelineMetrics.getBackpressurePolicy()));
+        
+        Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            StageMetrics metrics = stageMetrics[i];
+            if (metrics.getCount() == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.ROOT, " | %s p50=%.2f p99=%.2f max=%.2f ms",
+                    stages[i].name().toLowerCase(Locale.ROOT),
+                    metrics.getP50Millis(), metrics.getP99Millis(), metrics.getMaxMillis()));
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * Stop updating and unregister MXBeans.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        
+        scheduler.shutdownNow();
+        scheduler = null;
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : names) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ex) {
+                Logger.getLogger(MetricsPublisher.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+        names.clear();
+    }
+}
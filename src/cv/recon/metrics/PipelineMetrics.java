@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.metrics;
+
+import cv.recon.engine.Pipeline;
+import cv.recon.util.MatPool;
+
+/**
+ * Pipeline metrics read from a running Pipeline and the shared MatPool.
+ *
+ * @author Burhanuddin
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+    
+    private final Pipeline pipeline;
+    private final MatPool pool;
+    private final long[] lastCounts;
+    private final double[] rates;
+    
+    /**
+     * Construct pipeline metrics.
+     * @param pipeline Pipeline to read from
+     */
+    public PipelineMetrics(Pipeline pipeline) {
+        this.pipeline = pipeline;
+        
+        pool = MatPool.getShared();
+        lastCounts = new long[4];
+        rates = new double[4];
+    }
+    
+    /**
+     * Compute frame rates from the counts since the previous update. Called
+     * from a single thread.
+     * @param elapsed Time since previous update in nanoseconds
+     */
+    void update(long elapsed) {
+        long[] counts = {
+            pipeline.getCapturedCount(),
+            pipeline.getProcessedCount(),
+            pipeline.getDroppedCount(),
+            pipeline.getRenderedCount()
+        };
+        
+        synchronized (rates) {
+            for (int i = 0; i < counts.length; i++) {
+                rates[i] = (counts[i] - lastCounts[i]) * 1e9 / elapsed;
+                lastCounts[i] = counts[i];
+            }
+        }
+    }
+    
+    private double rate(int i) {
+        synchronized (rates) {
+            return rates[i];
+        }
+    }
+    
+    @Override
+    public long getCapturedFrames() {
+        return pipeline.getCapturedCount();
+    }
+    
+    @Override
+    public long getProcessedFrames() {
+        return pipeline.getProcessedCount();
+    }
+    
+    @Override
+    public long getDroppedFrames() {
+        return pipeline.getDroppedCount();
+    }
+    
+    @Override
+    public long getRenderedFrames() {
+        return pipeline.getRenderedCount();
+    }
+    
+    @Override
+    public double getCaptureRate() {
+        return rate(0);
+    }
+    
+    @Override
+    public double getProcessingRate() {
+        return rate(1);
+    }
+    
+    @Override
+    public double getDropRate() {
+        return rate(2);
+    }
+    
+    @Override
+    public double getRenderRate() {
+        return rate(3);
+    }
+    
+    @Override
+    public int getCaptureQueueDepth() {
+        return pipeline.getCaptureQueueDepth();
+    }
+    
+    @Override
+    public int getRenderQueueDepth() {
+        return pipeline.getRenderQueueDepth();
+    }
+    
+    @Override
+    public long getNativeMatBytes() {
+        return pool.getNativeBytes();
+    }
+    
+    @Override
+    public long getPeakNativeMatBytes() {
+        return pool.getPeakNativeBytes();
+    }
+    
+    @Override
+    public String getBackpressurePolicy() {
+        return pipeline.getLoadShedder().getPolicy().name();
+    }
+    
+    @Override
+    public double getLoad() {
+        return pipeline.getLoadShedder().getLoad();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.metrics;
+
+/**
+ * Frame counters, frame rates, queue depths and native memory of a
+ * pipeline, as seen over JMX.
+ *
+ * @author Burhanuddin
+ */
+public interface PipelineMetricsMXBean {
+    
+    long getCapturedFrames();
+    
+    long getProcessedFrames();
+    
+    long getDroppedFrames();
+    
+    long getRenderedFrames();
+    
+    /**
+     * @return Captured frames per second over the last update period
+     */
+    double getCaptureRate();
+    
+    /**
+     * @return Processed frames per second over the last update period
+     */
+    double getProcessingRate();
+    
+    /**
+     * @return Dropped frames per second over the last update period
+     */
+    double getDropRate();
+    
+    /**
+     * @return Rendered frames per second over the last update period
+     */
+    double getRenderRate();
+    
+    int getCaptureQueueDepth();
+    
+    int getRenderQueueDepth();
+    
+    /**
+     * @return Bytes of native Mat buffers held by the shared MatPool
+     */
+    long getNativeMatBytes();
+    
+    long getPeakNativeMatBytes();
+    
+    /**
+     * @return Backpressure policy currently applied by the capture stage
+     */
+    String getBackpressurePolicy();
+    
+    /**
+     * @return Processing latency over capture interval
+     */
+    double getLoad();
+}
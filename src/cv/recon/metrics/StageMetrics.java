@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.metrics;
+
+import cv.recon.util.LatencyHistogram;
+
+/**
+ * Stage metrics backed by a LatencyHistogram. Percentiles are computed when
+ * read, so recording stays cheap.
+ *
+ * @author Burhanuddin
+ */
+public class StageMetrics implements StageMetricsMXBean {
+    
+    private static final double NANOS_PER_MILLI = 1e6;
+    
+    private final LatencyHistogram histogram;
+    private long lastCount;
+    private volatile double rate;
+    
+    /**
+     * Construct stage metrics.
+     * @param histogram Histogram the stage records into
+     */
+    public StageMetrics(LatencyHistogram histogram) {
+        this.histogram = histogram;
+    }
+    
+    /**
+     * Compute rate from the count recorded since the previous update.
+     * @param elapsed Time since previous update in nanoseconds
+     */
+    void update(long elapsed) {
+        long count = histogram.getCount();
+        rate = Math.max(0, count - lastCount) * 1e9 / elapsed;
+        lastCount = count;
+    }
+    
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+    
+    @Override
+    public double getRate() {
+        return rate;
+    }
+    
+    @Override
+    public double getMeanMillis() {
+        return histogram.getMean() / NANOS_PER_MILLI;
+    }
+    
+    @Override
+    public double getP50Millis() {
+        return histogram.getPercentile(50) / NANOS_PER_MILLI;
+    }
+    
+    @Override
+    public double getP99Millis() {
+        return histogram.getPercentile(99) / NANOS_PER_MILLI;
+    }
+    
+    @Override
+    public double getMaxMillis() {
+        return histogram.getMax() / NANOS_PER_MILLI;
+    }
+    
+    @Override
+    public void reset() {
+        histogram.reset();
+        lastCount = 0;
+    }
+}
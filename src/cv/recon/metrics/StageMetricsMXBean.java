@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.metrics;
+
+/**
+ * Latency and rate of one pipeline stage, as seen over JMX.
+ *
+ * @author Burhanuddin
+ */
+public interface StageMetricsMXBean {
+    
+    /**
+     * @return Number of latencies recorded since start or last reset
+     */
+    long getCount();
+    
+    /**
+     * @return Recorded latencies per second over the last update period
+     */
+    double getRate();
+    
+    double getMeanMillis();
+    
+    double getP50Millis();
+    
+    double getP99Millis();
+    
+    double getMaxMillis();
+    
+    /**
+     * Start recording latencies from scratch.
+     */
+    void reset();
+}
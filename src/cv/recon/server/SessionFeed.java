@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.server;
+
+import cv.recon.engine.SignalListener;
+import cv.recon.util.JpegEncoder;
+
+/**
+ * Latest state of one session, as published by a StatusServer.
+ * <p/>
+ * The processing thread writes every sample, and the server reads the
+ * latest one at its own pace. A version number is bumped before and after
+ * every write, and a reader retries until it reads the same even version
+ * on both sides, so the server never sees half a sample and the processing
+ * thread never waits for it.
+ *
+ * @author Burhanuddin
+ */
+public class SessionFeed implements SignalListener {
+    
+    private final String name;
+    private final JpegEncoder encoder;
+    
+    private volatile long version;
+    private volatile long timestamp;
+    private volatile double value;
+    private volatile double midRange;
+    private volatile long count;
+    
+    /**
+     * Construct feed.
+     * @param name Name of the session in URLs and events
+     * @param encoder Encoder of the output, null for no video
+     */
+    SessionFeed(String name, JpegEncoder encoder) {
+        this.name = name;
+        this.encoder = encoder;
+    }
+    
+    @Override
+    public void sampleAdded(long timestamp, double value, double midRange, long count, boolean repetition) {
+        long next = version + 1;
+        version = next;
+        this.timestamp = timestamp;
+        this.value = value;
+        this.midRange = midRange;
+        this.count = count;
+        version = next + 1;
+    }
+    
+    /**
+     * Read the latest sample.
+     * @param sample Record to fill
+     * @return Version of the sample, 0 before the first sample
+     */
+    long read(Sample sample) {
+        while (true) {
+            long before = version;
+            if ((before & 1) == 0) {
+                sample.timestamp = timestamp;
+                sample.value = value;
+                sample.midRange = midRange;
+                sample.count = count;
+                if (version == before) {
+                    return before;
+                }
+            }
+            Thread.yield();
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return Encoder to offer processed outputs to, null if this feed has
+     * no video
+     */
+    public JpegEncoder getEncoder() {
+        return encoder;
+    }
+    
+    /**
+     * Latest sample of a feed, filled by read.
+     */
+    static class Sample {
+        long timestamp;
+        double value;
+        double midRange;
+        long count;
+    }
+}
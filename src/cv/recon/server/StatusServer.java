@@ -0,0 +1,648 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.server;
+
+import cv.recon.util.JpegEncoder;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Embedded HTTP server publishing the counts of running sessions, so a
+ * station without a desktop can be watched from a browser or polled by
+ * another program.
+ * <p/>
+ * A single thread serves every connection through a Selector and never
+ * blocks on a client. Paths:
+ * <ul>
+ * <li><code>/</code> JSON array with the latest sample of every session</li>
+ * <li><code>/events</code> and <code>/events/name</code> Server-Sent Events,
+ * a sample event with the latest sample of a session and a repetition event
+ * whenever its count goes up</li>
+ * <li><code>/video/name</code> MJPEG stream of the processed output of a
+ * session</li>
+ * </ul>
+ * Samples are published once per tick with the latest sample of each
+ * session. A client that has not taken the previous events yet skips ticks,
+ * and a video client only gets a new image once the previous one is
+ * written, so slow clients get fewer updates and no backlog builds up for
+ * them.
+ *
+ * @author Burhanuddin
+ */
+public class StatusServer {
+    
+    public static final long TICK_MILLIS = 100;
+    
+    private static final int MAX_REQUEST = 8192;
+    private static final int MAX_PENDING = 64 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final List<SessionFeed> feeds;
+    private final List<Client> clients;
+    private final SessionFeed.Sample sample;
+    private final StringBuilder text;
+    private Thread thread;
+    private volatile boolean running;
+    
+    /**
+     * Construct server bound to an address. Connections are only served once
+     * started.
+     * @param address Address to listen on, port 0 for any free port
+     * @throws IOException If the address cannot be bound
+     */
+    public StatusServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        
+        feeds = new CopyOnWriteArrayList<>();
+        clients = new ArrayList<>();
+        sample = new SessionFeed.Sample();
+        text = new StringBuilder();
+    }
+    
+    /**
+     * Publish a session. Can be called while the server runs.
+     * @param name Name of the session in URLs and events
+     * @param video Whether to serve the processed output as MJPEG, in which
+     * case the output must be offered to the encoder of the feed
+     * @return Feed to pass the samples of the session to
+     */
+    public SessionFeed addFeed(String name, boolean video) {
+        SessionFeed feed = new SessionFeed(name, video ? new JpegEncoder(name) : null);
+        feeds.add(feed);
+        return feed;
+    }
+    
+    /**
+     * @return Port the server listens on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+    
+    /**
+     * Start serving on a thread of its own.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "http");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Close every connection, stop serving and stop the encoders of the
+     * feeds. Call once nothing offers outputs any more.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(StatusServer.class.getName()).log(Level.WARNING, null, ex);
+            Thread.currentThread().interrupt();
+        }
+        
+        for (SessionFeed feed : feeds) {
+            if (feed.getEncoder() != null) {
+                feed.getEncoder().close();
+            }
+        }
+    }
+    
+    /**
+     * Server thread. Serves ready connections and publishes once per tick.
+     */
+    private void run() {
+        long tick = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+        long nextTick = System.nanoTime();
+        try {
+            while (running) {
+                long wait = TimeUnit.NANOSECONDS.toMillis(nextTick - System.nanoTime());
+                if (wait > 0) {
+                    selector.select(wait);
+                } else {
+                    selector.selectNow();
+                }
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    publish();
+                    nextTick = now + tick;
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(StatusServer.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            for (int i = clients.size() - 1; i >= 0; i--) {
+                clients.get(i).close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ex) {
+                Logger.getLogger(StatusServer.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+    }
+    
+    /**
+     * Serve a ready key.
+     * @param key Key of the server channel or of a client
+     */
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        
+        if (key.isAcceptable()) {
+            try {
+                accept();
+            } catch (IOException ex) {
+                Logger.getLogger(StatusServer.class.getName()).log(Level.WARNING, null, ex);
+            }
+            return;
+        }
+        
+        Client client = (Client) key.attachment();
+        try {
+            if (key.isReadable()) {
+                client.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                client.flush();
+            }
+        } catch (IOException ex) {
+            client.close();
+        }
+    }
+    
+    /**
+     * Accept a connection.
+     * @throws IOException If it cannot be set up
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(channel);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+    }
+    
+    /**
+     * Send new samples and images to every streaming client.
+     */
+    private void publish() {
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            try {
+                if (client.stream == Stream.EVENTS) {
+                    publishEvents(client);
+                } else if (client.stream == Stream.VIDEO) {
+                    publishImage(client);
+                }
+            } catch (IOException ex) {
+                client.close();
+            }
+        }
+    }
+    
+    /**
+     * Send the samples of the feeds followed by a client that it has not been
+     * sent yet.
+     * @param client Events client
+     * @throws IOException If the client cannot be written to
+     */
+    private void publishEvents(Client client) throws IOException {
+        if (client.pendingBytes > MAX_PENDING) {
+            return;
+        }
+        
+        text.setLength(0);
+        if (client.feed != null) {
+            appendEvents(client, client.feed);
+        } else {
+            for (SessionFeed feed : feeds) {
+                appendEvents(client, feed);
+            }
+        }
+        if (text.length() > 0) {
+            client.queue(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+    
+    /**
+     * Append the events of a feed for a client, if it has a sample the client
+     * has not been sent yet.
+     * @param client Events client
+     * @param feed Feed followed by the client
+     */
+    private void appendEvents(Client client, SessionFeed feed) {
+        long version = feed.read(sample);
+        long[] sent = client.sent.get(feed);
+        if (sent == null) {
+            // count unknown, so the first sample does not look like repetitions
+            sent = new long[] {0, -1};
+            client.sent.put(feed, sent);
+        }
+        if (version == sent[0]) {
+            return;
+        }
+        
+        text.append("event: sample\ndata: ");
+        appendSample(feed);
+        text.append("\n\n");
+        
+        if (sent[1] >= 0 && sample.count > sent[1]) {
+            text.append("event: repetition\ndata: {\"session\":");
+            appendString(feed.getName());
+            text.append(",\"timestamp\":").append(sample.timestamp);
+            text.append(",\"count\":").append(sample.count);
+            text.append("}\n\n");
+        }
+        sent[0] = version;
+        sent[1] = sample.count;
+    }
+    
+    /**
+     * Send the latest image of the feed of a video client, if it is new and
+     * the previous one has been written.
+     * @param client Video client
+     * @throws IOException If the client cannot be written to
+     */
+    private void publishImage(Client client) throws IOException {
+        if (client.pendingBytes > 0) {
+            return;
+        }
+        
+        JpegEncoder encoder = client.feed.getEncoder();
+        long sequence = encoder.getSequence();
+        byte[] jpeg = encoder.getJpeg();
+        if (sequence == client.sentImage || jpeg == null) {
+            return;
+        }
+        client.sentImage = sequence;
+        
+        String header = "--frame\r\nContent-Type: image/jpeg\r\nContent-Length: " + jpeg.length + "\r\n\r\n";
+        client.queue(ByteBuffer.wrap(header.getBytes(StandardCharsets.ISO_8859_1)),
+                ByteBuffer.wrap(jpeg), ByteBuffer.wrap(CRLF));
+    }
+    
+    /**
+     * Append the latest sample read from a feed as a JSON object.
+     * @param feed Feed the sample was read from
+     */
+    private void appendSample(SessionFeed feed) {
+        text.append("{\"session\":");
+        appendString(feed.getName());
+        text.append(",\"timestamp\":").append(sample.timestamp);
+        text.append(",\"value\":");
+        appendNumber(sample.value);
+        text.append(",\"midRange\":");
+        appendNumber(sample.midRange);
+        text.append(",\"count\":").append(sample.count);
+        text.append('}');
+    }
+    
+    /**
+     * Append a JSON number, null if it is not finite.
+     * @param value Number
+     */
+    private void appendNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            text.append("null");
+        } else {
+            text.append(value);
+        }
+    }
+    
+    /**
+     * Append a JSON string.
+     * @param value String
+     */
+    private void appendString(String value) {
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c < 0x20) {
+                text.append(String.format("\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        text.append('"');
+    }
+    
+    /**
+     * Find a feed by name.
+     * @param name URL-encoded name
+     * @return Feed, null if there is none
+     */
+    private SessionFeed findFeed(String name) {
+        try {
+            String decoded = URLDecoder.decode(name, "UTF-8");
+            for (SessionFeed feed : feeds) {
+                if (feed.getName().equals(decoded)) {
+                    return feed;
+                }
+            }
+        } catch (UnsupportedEncodingException | IllegalArgumentException ex) {
+            // not a valid name
+        }
+        return null;
+    }
+    
+    /**
+     * Kind of response streamed to a client.
+     */
+    private enum Stream {
+        EVENTS, VIDEO
+    }
+    
+    /**
+     * A connection, with its request being read and its response being
+     * written.
+     */
+    private class Client {
+        
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer request;
+        private final ArrayDeque<ByteBuffer> pending;
+        private int pendingBytes;
+        private boolean closeWhenFlushed;
+        private boolean responding;
+        private Stream stream;
+        private SessionFeed feed;
+        private final Map<SessionFeed, long[]> sent;
+        private long sentImage;
+        
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            request = ByteBuffer.allocate(MAX_REQUEST);
+            pending = new ArrayDeque<>();
+            sent = new HashMap<>();
+        }
+        
+        /**
+         * Read the request, and respond once its header is complete. Anything
+         * after the header is ignored.
+         * @throws IOException If the connection fails
+         */
+        void read() throws IOException {
+            if (channel.read(request) < 0) {
+                close();
+                return;
+            }
+            if (responding) {
+                request.clear();
+                return;
+            }
+            
+            int end = headerEnd();
+            if (end < 0) {
+                if (!request.hasRemaining()) {
+                    respond("400 Bad Request", "text/plain", "Request too large\n");
+                }
+                return;
+            }
+            
+            String head = new String(request.array(), 0, end, StandardCharsets.ISO_8859_1);
+            request.clear();
+            int lineEnd = head.indexOf("\r\n");
+            route(lineEnd < 0 ? head : head.substring(0, lineEnd));
+        }
+        
+        /**
+         * @return Index of the blank line ending the request header, -1 if it
+         * has not been read yet
+         */
+        private int headerEnd() {
+            byte[] bytes = request.array();
+            for (int i = 3; i < request.position(); i++) {
+                if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                    return i - 3;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Respond to a request.
+         * @param line Request line
+         * @throws IOException If the connection fails
+         */
+        private void route(String line) throws IOException {
+            String[] parts = line.split(" ");
+            if (parts.length < 2) {
+                respond("400 Bad Request", "text/plain", "Bad request\n");
+                return;
+            }
+            if (!parts[0].equals("GET")) {
+                respond("405 Method Not Allowed", "text/plain", "Only GET is supported\n");
+                return;
+            }
+            
+            String path = parts[1];
+            int query = path.indexOf('?');
+            if (query >= 0) {
+                path = path.substring(0, query);
+            }
+            
+            if (path.equals("/")) {
+                respond("200 OK", "application/json", status());
+            } else if (path.equals("/events")) {
+                startEvents(null);
+            } else if (path.startsWith("/events/")) {
+                SessionFeed found = findFeed(path.substring("/events/".length()));
+                if (found != null) {
+                    startEvents(found);
+                } else {
+                    respond("404 Not Found", "text/plain", "No such session\n");
+                }
+            } else if (path.startsWith("/video/")) {
+                SessionFeed found = findFeed(path.substring("/video/".length()));
+                if (found != null && found.getEncoder() != null) {
+                    startVideo(found);
+                } else {
+                    respond("404 Not Found", "text/plain", "No video for such session\n");
+                }
+            } else {
+                respond("404 Not Found", "text/plain", "Not found\n");
+            }
+        }
+        
+        /**
+         * @return JSON array with the latest sample of every feed
+         */
+        private String status() {
+            text.setLength(0);
+            text.append('[');
+            for (SessionFeed each : feeds) {
+                if (text.length() > 1) {
+                    text.append(',');
+                }
+                each.read(sample);
+                appendSample(each);
+            }
+            text.append("]\n");
+            return text.toString();
+        }
+        
+        /**
+         * Send a whole response and close the connection once it is written.
+         * @param status Status code and reason
+         * @param contentType Content type of the body
+         * @param body Body
+         * @throws IOException If the connection fails
+         */
+        private void respond(String status, String contentType, String body) throws IOException {
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            String header = "HTTP/1.1 " + status + "\r\n"
+                    + "Content-Type: " + contentType + "; charset=utf-8\r\n"
+                    + "Content-Length: " + content.length + "\r\n"
+                    + "Access-Control-Allow-Origin: *\r\n"
+                    + "Connection: close\r\n\r\n";
+            responding = true;
+            closeWhenFlushed = true;
+            queue(ByteBuffer.wrap(header.getBytes(StandardCharsets.ISO_8859_1)), ByteBuffer.wrap(content));
+        }
+        
+        /**
+         * Start a Server-Sent Events stream, with the latest samples right
+         * away.
+         * @param followed Feed to follow, null for every feed
+         * @throws IOException If the connection fails
+         */
+        private void startEvents(SessionFeed followed) throws IOException {
+            String header = "HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: text/event-stream; charset=utf-8\r\n"
+                    + "Cache-Control: no-cache\r\n"
+                    + "Access-Control-Allow-Origin: *\r\n"
+                    + "Connection: keep-alive\r\n\r\n";
+            responding = true;
+            feed = followed;
+            queue(ByteBuffer.wrap(header.getBytes(StandardCharsets.ISO_8859_1)));
+            stream = Stream.EVENTS;
+            publishEvents(this);
+        }
+        
+        /**
+         * Start an MJPEG stream, with the latest image right away.
+         * @param followed Feed whose output to stream
+         * @throws IOException If the connection fails
+         */
+        private void startVideo(SessionFeed followed) throws IOException {
+            String header = "HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: multipart/x-mixed-replace; boundary=frame\r\n"
+                    + "Cache-Control: no-cache\r\n"
+                    + "Access-Control-Allow-Origin: *\r\n"
+                    + "Connection: close\r\n\r\n";
+            responding = true;
+            feed = followed;
+            queue(ByteBuffer.wrap(header.getBytes(StandardCharsets.ISO_8859_1)));
+            stream = Stream.VIDEO;
+        }
+        
+        /**
+         * Queue data and write as much as the connection takes now.
+         * @param buffers Data to write, in order
+         * @throws IOException If the connection fails
+         */
+        void queue(ByteBuffer... buffers) throws IOException {
+            for (ByteBuffer buffer : buffers) {
+                pending.add(buffer);
+                pendingBytes += buffer.remaining();
+            }
+            flush();
+        }
+        
+        /**
+         * Write queued data until the connection takes no more, and only ask
+         * to be told when it is writable while data is left.
+         * @throws IOException If the connection fails
+         */
+        void flush() throws IOException {
+            while (!pending.isEmpty()) {
+                ByteBuffer buffer = pending.peek();
+                pendingBytes -= channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                pending.poll();
+            }
+            
+            if (pending.isEmpty() && closeWhenFlushed) {
+                close();
+            } else if (key.isValid()) {
+                key.interestOps(pending.isEmpty()
+                        ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+        
+        /**
+         * Close the connection and forget the client.
+         */
+        void close() {
+            clients.remove(this);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                Logger.getLogger(StatusServer.class.getName()).log(Level.FINE, null, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Count bytes allocated on the Java heap by the current thread.
+ * <p/>
+ * Relies on com.sun.management.ThreadMXBean, which is available on HotSpot
+ * based JVMs. The cost of the measurement itself is calibrated away, so a
+ * section that allocates nothing reads as zero.
+ *
+ * @author Burhanuddin
+ */
+public class AllocationCounter {
+    
+    private static final com.sun.management.ThreadMXBean threadBean;
+    private static final long overhead;
+    
+    static {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threadBean = (com.sun.management.ThreadMXBean) bean;
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threadBean = null;
+        }
+        overhead = calibrate();
+    }
+    
+    /**
+     * Measure the bytes allocated by reading the counter twice in a row.
+     */
+    private static long calibrate() {
+        if (threadBean == null) {
+            return 0;
+        }
+        
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            long start = getAllocatedBytes();
+            long delta = getAllocatedBytes() - start;
+            if (delta < min) {
+                min = delta;
+            }
+        }
+        return min;
+    }
+    
+    /**
+     * Check if allocation counting is supported by this JVM.
+     * @return A boolean stating whether counting is supported
+     */
+    public static boolean isSupported() {
+        return threadBean != null;
+    }
+    
+    /**
+     * Return bytes allocated by the current thread since it started.
+     * @return Allocated bytes, or 0 if not supported
+     */
+    public static long getAllocatedBytes() {
+        if (threadBean == null) {
+            return 0;
+        }
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    /**
+     * Return bytes allocated by the current thread since a previous reading,
+     * excluding the cost of reading the counter.
+     * @param start Value returned by getAllocatedBytes
+     * @return Allocated bytes
+     */
+    public static long since(long start) {
+        long delta = getAllocatedBytes() - start - overhead;
+        return delta < 0 ? 0 : delta;
+    }
+}
@@ -16,6 +16,7 @@
  */
 package cv.recon.util;
 
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
@@ -26,6 +27,11 @@ import org.opencv.imgproc.Imgproc;
  * @author Burhanuddin
  */
 public class CannyDetector {
+    private static final Size BLUR_SIZE = new Size(3, 3);
+    private static final Scalar ZERO = new Scalar(0);
+    
+    private final MatPool pool = MatPool.getShared();
+    private Mat blank;
     int edgeThresh;
     int lowThreshold;
     final int max_lowThreshold;
@@ -75,15 +81,18 @@ public class CannyDetector {
     
     /**
      * Apply Canny detector to Mat.
+     * <p/>
+     * Intermediate Mats are drawn from the shared MatPool, so repeated calls
+     * with the same frame size do not allocate.
      * @param src Input Mat
      * @param dst Output Mat
      */
     public void detect(Mat src, Mat dst) {
-        Mat src_gray = new Mat();
-        Mat detected_edges = new Mat();
+        Mat src_gray = pool.acquire(src.rows(), src.cols(), CvType.CV_8UC1);
+        Mat detected_edges = pool.acquire(src.rows(), src.cols(), CvType.CV_8UC1);
         
         Imgproc.cvtColor(src, src_gray, Imgproc.COLOR_RGB2GRAY);
-        Imgproc.blur(src_gray, detected_edges, new Size(3, 3));
+        Imgproc.blur(src_gray, detected_edges, BLUR_SIZE);
         Imgproc.Canny(detected_edges, 
                 detected_edges, 
                 lowThreshold, 
@@ -91,7 +100,29 @@ public class CannyDetector {
                 kernel_size, 
                 true);
         
-        dst.setTo(new Scalar(0));
+        prepareBlank(src);
+        blank.copyTo(dst);
         src.copyTo(dst, detected_edges);
+        
+        pool.release(src_gray);
+        pool.release(detected_edges);
+    }
+    
+    /**
+     * Keep a zeroed Mat matching the input to clear output with, as Mat.setTo
+     * allocates a new Mat header on every call.
+     * @param src Input Mat
+     */
+    private void prepareBlank(Mat src) {
+        if (blank != null
+                && blank.rows() == src.rows()
+                && blank.cols() == src.cols()
+                && blank.type() == src.type()) {
+            return;
+        }
+        
+        pool.release(blank);
+        blank = pool.acquire(src);
+        blank.setTo(ZERO);
     }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+/**
+ * Fixed capacity history of timestamped samples on primitive arrays. Once
+ * full, each new sample overwrites the oldest one.
+ * <p/>
+ * Samples are indexed from the oldest. Not thread-safe.
+ *
+ * @author Burhanuddin
+ */
+public class HistoryBuffer {
+    
+    private final long[] timestamps;
+    private final double[] values;
+    private int start;
+    private int size;
+    
+    /**
+     * Construct empty history.
+     * @param capacity Number of most recent samples kept
+     */
+    public HistoryBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        timestamps = new long[capacity];
+        values = new double[capacity];
+    }
+    
+    /**
+     * Remove every sample.
+     */
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+    
+    /**
+     * Add a sample, overwriting the oldest one if full.
+     * @param timestamp Timestamp of the sample
+     * @param value Sample value
+     */
+    public void add(long timestamp, double value) {
+        int index = start + size;
+        if (index >= timestamps.length) {
+            index -= timestamps.length;
+        }
+        timestamps[index] = timestamp;
+        values[index] = value;
+        
+        if (size == timestamps.length) {
+            start = start + 1 == timestamps.length ? 0 : start + 1;
+        } else {
+            size++;
+        }
+    }
+    
+    private int index(int i) {
+        int index = start + i;
+        return index >= timestamps.length ? index - timestamps.length : index;
+    }
+    
+    /**
+     * @param i Index from the oldest sample
+     * @return Timestamp of the sample
+     */
+    public long getTimestamp(int i) {
+        return timestamps[index(i)];
+    }
+    
+    /**
+     * @param i Index from the oldest sample
+     * @return Value of the sample
+     */
+    public double getValue(int i) {
+        return values[index(i)];
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int getCapacity() {
+        return timestamps.length;
+    }
+}
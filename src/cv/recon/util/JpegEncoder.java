@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.highgui.Highgui;
+
+/**
+ * Encode a processed output to JPEG at a low rate on a thread of its own.
+ * <p/>
+ * The processing thread asks isDue before producing an output it would not
+ * otherwise need, and offers it. An offer only copies the output into the
+ * encoder, and only while the encoder is idle, so processing never waits
+ * for encoding. The latest encoded image is published as a byte array that
+ * is never changed afterwards, so any number of readers can send it.
+ *
+ * @author Burhanuddin
+ */
+public class JpegEncoder {
+    
+    public static final double DEFAULT_RATE = 5;
+    public static final int DEFAULT_QUALITY = 70;
+    
+    private final long period;
+    private final MatOfInt params;
+    private final Mat pending;
+    private final MatOfByte encoded;
+    private final AtomicBoolean busy;
+    private final Thread thread;
+    private volatile boolean running;
+    private long nextDue;
+    
+    private volatile byte[] jpeg;
+    private volatile long sequence;
+    
+    /**
+     * Construct encoder at DEFAULT_RATE and DEFAULT_QUALITY and start its
+     * thread.
+     * @param name Name used in the thread name
+     */
+    public JpegEncoder(String name) {
+        this(name, DEFAULT_RATE, DEFAULT_QUALITY);
+    }
+    
+    /**
+     * Construct encoder and start its thread.
+     * @param name Name used in the thread name
+     * @param rate Most images encoded per second
+     * @param quality JPEG quality, 0 to 100
+     */
+    public JpegEncoder(String name, double rate, int quality) {
+        period = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        params = new MatOfInt(Highgui.CV_IMWRITE_JPEG_QUALITY, quality);
+        pending = new Mat();
+        encoded = new MatOfByte();
+        busy = new AtomicBoolean();
+        nextDue = System.nanoTime();
+        
+        running = true;
+        thread = new Thread(this::run, "jpeg-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Called from processing thread.
+     * @return Whether an offer now would be encoded
+     */
+    public boolean isDue() {
+        return !busy.get() && System.nanoTime() - nextDue >= 0;
+    }
+    
+    /**
+     * Called from processing thread. Copy an output for encoding if it is
+     * due, else ignore it.
+     * @param output Processed output, 8-bit with 1 or 3 channels
+     */
+    public void offer(Mat output) {
+        if (!isDue() || output.empty()) {
+            return;
+        }
+        
+        output.copyTo(pending);
+        nextDue = System.nanoTime() + period;
+        busy.set(true);
+        LockSupport.unpark(thread);
+    }
+    
+    /**
+     * Encoding thread. Waits for an offer and encodes it, then hands the
+     * pending Mat back to the processing thread.
+     */
+    private void run() {
+        while (running) {
+            if (!busy.get()) {
+                LockSupport.park(this);
+                continue;
+            }
+            
+            if (Highgui.imencode(".jpg", pending, encoded, params)) {
+                jpeg = encoded.toArray();
+                sequence++;
+            }
+            busy.set(false);
+        }
+    }
+    
+    /**
+     * @return Latest encoded image, null before the first one
+     */
+    public byte[] getJpeg() {
+        return jpeg;
+    }
+    
+    /**
+     * @return Number of images encoded so far, read before getJpeg to tell
+     * whether the image is new
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
+    /**
+     * Stop the encoding thread and release native memory. Call once nothing
+     * offers any more.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(JpegEncoder.class.getName()).log(Level.WARNING, null, ex);
+            Thread.currentThread().interrupt();
+        }
+        
+        pending.release();
+        encoded.release();
+        params.release();
+    }
+}
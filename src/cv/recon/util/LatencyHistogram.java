@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ * <p/>
+ * Buckets are spaced logarithmically, with SUB_BUCKETS buckets per power of
+ * two, so any value up to several minutes is recorded with a relative error
+ * below 1 / SUB_BUCKETS in a fixed array. Recording is a few atomic
+ * increments and never allocates or blocks, so it is cheap enough to call for
+ * every frame from any thread. Readers see a consistent enough view for
+ * monitoring while writers keep recording.
+ *
+ * @author Burhanuddin
+ */
+public class LatencyHistogram {
+    
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+    
+    /**
+     * Construct empty histogram.
+     */
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(BUCKET_COUNT);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+    
+    /**
+     * Record a latency.
+     * @param nanos Latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = java.lang.Math.max(0, nanos);
+        
+        buckets.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+    
+    /**
+     * Bucket of a value. Values below SUB_BUCKETS have a bucket each, above
+     * that every power of two is split into SUB_BUCKETS buckets.
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    /**
+     * Highest value falling into a bucket.
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+    
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * @return Highest latency recorded in nanoseconds, 0 if empty
+     */
+    public long getMax() {
+        return max.get();
+    }
+    
+    /**
+     * @return Mean latency in nanoseconds, 0 if empty
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+    
+    /**
+     * Return latency below which a percentage of recorded latencies fall,
+     * using nearest rank. The result is the upper bound of its bucket, capped
+     * at the maximum.
+     * @param percentile Percentile in [0, 100]
+     * @return Latency in nanoseconds, 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        
+        long rank = java.lang.Math.max(1, (long) java.lang.Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return java.lang.Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+    
+    /**
+     * Clear every bucket. Latencies recorded concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
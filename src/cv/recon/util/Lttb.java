@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+/**
+ * Downsample a series for display with Largest-Triangle-Three-Buckets.
+ * <p/>
+ * The first and last samples are kept, and the samples in between are split
+ * into equal buckets. From each bucket the sample forming the largest
+ * triangle with the previously kept sample and the mean of the next bucket
+ * is kept, which preserves peaks and troughs much better than averaging or
+ * taking every nth sample. Runs in a single pass and allocates nothing.
+ *
+ * @author Burhanuddin
+ */
+public class Lttb {
+    
+    /**
+     * Downsample a history.
+     * @param history Samples, oldest first
+     * @param threshold Maximum number of samples to keep, at least 3
+     * @param origin Timestamp subtracted from every timestamp
+     * @param scale Factor applied to timestamps after subtracting origin, for
+     * example 0.001 for seconds from milliseconds
+     * @param x Destination of kept x values, at least threshold long
+     * @param y Destination of kept values, at least threshold long
+     * @return Number of samples kept
+     */
+    public static int downsample(HistoryBuffer history, int threshold, long origin, double scale,
+            double[] x, double[] y) {
+        int n = history.size();
+        if (threshold < 3) {
+            throw new IllegalArgumentException("threshold must be at least 3");
+        }
+        
+        if (n <= threshold) {
+            for (int i = 0; i < n; i++) {
+                x[i] = (history.getTimestamp(i) - origin) * scale;
+                y[i] = history.getValue(i);
+            }
+            return n;
+        }
+        
+        double every = (double) (n - 2) / (threshold - 2);
+        double ax = (history.getTimestamp(0) - origin) * scale;
+        double ay = history.getValue(0);
+        x[0] = ax;
+        y[0] = ay;
+        
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // mean of the next bucket, or the last sample for the last bucket
+            int nextStart = (int) ((bucket + 1) * every) + 1;
+            int nextEnd = java.lang.Math.min((int) ((bucket + 2) * every) + 1, n);
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                meanX += (history.getTimestamp(i) - origin) * scale;
+                meanY += history.getValue(i);
+            }
+            meanX /= nextEnd - nextStart;
+            meanY /= nextEnd - nextStart;
+            
+            int from = (int) (bucket * every) + 1;
+            int to = nextStart;
+            double maxArea = -1;
+            int kept = from;
+            for (int i = from; i < to; i++) {
+                double px = (history.getTimestamp(i) - origin) * scale;
+                double py = history.getValue(i);
+                double area = java.lang.Math.abs((ax - meanX) * (py - ay) - (ax - px) * (meanY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    kept = i;
+                }
+            }
+            
+            ax = (history.getTimestamp(kept) - origin) * scale;
+            ay = history.getValue(kept);
+            x[bucket + 1] = ax;
+            y[bucket + 1] = ay;
+        }
+        
+        x[threshold - 1] = (history.getTimestamp(n - 1) - origin) * scale;
+        y[threshold - 1] = history.getValue(n - 1);
+        return threshold;
+    }
+}
@@ -16,11 +16,12 @@
  */
 package cv.recon.util;
 
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
-import javafx.embed.swing.SwingFXUtils;
+import java.nio.ByteBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
 
 /**
  *
@@ -28,9 +29,29 @@ import org.opencv.core.Mat;
  */
 public class MatFXUtils {
     
+    /**
+     * Indexed format mapping each byte to the gray level of the same value.
+     */
+    public static final PixelFormat<ByteBuffer> GRAY_FORMAT = createGrayFormat();
+    
+    /**
+     * Create gray palette for single channel Mats.
+     * @return Indexed pixel format
+     */
+    private static PixelFormat<ByteBuffer> createGrayFormat() {
+        int[] colors = new int[256];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = 0xff000000 | (i << 16) | (i << 8) | i;
+        }
+        return PixelFormat.createByteIndexedInstance(colors);
+    }
+    
     /**
      * Convert from OpenCV Mat to JavaFX WritableImage to be displayed in
      * ImageView.
+     * <p/>
+     * Allocates a buffer on every call. Use MatImageWriter to update a view
+     * every frame.
      * @param mat Mat to be converted
      * @param writableImage Optional WritableImage, if non-null, the Mat will be
      * written in this WritableImage
@@ -38,28 +59,56 @@ public class MatFXUtils {
      * supplied with WritableImage
      */
     public static WritableImage toFXImage(Mat mat, WritableImage writableImage) {
-        int width = mat.width();
-        int height = mat.height();
-        int channels = mat.channels();
-        byte[] sourcePixels = new byte[width * height * channels];
-        mat.get(0, 0, sourcePixels);
-        
-        BufferedImage bufferedImage;
-        if (mat.channels() > 1) {
-            bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-        } else {
-            bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        WritableImage outputImage = writableImage;
+        if (outputImage == null) {
+            outputImage = new WritableImage(mat.width(), mat.height());
         }
         
-        final byte[] targetPixels = ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData();
-        System.arraycopy(sourcePixels, 0, targetPixels, 0, sourcePixels.length);
+        Mat converted = new Mat();
+        writePixels(mat, converted, new byte[bufferSize(mat)], outputImage.getPixelWriter());
+        converted.release();
         
         if (writableImage == null) {
-            WritableImage outputImage = SwingFXUtils.toFXImage(bufferedImage, null);
             return outputImage;
         } else {
-            SwingFXUtils.toFXImage(bufferedImage, writableImage);
             return null;
         }
     }
+    
+    /**
+     * Return buffer size needed by writePixels for a Mat.
+     * @param mat Mat to be written
+     * @return Buffer size in bytes
+     */
+    public static int bufferSize(Mat mat) {
+        int bytesPerPixel = mat.channels() > 1 ? 4 : 1;
+        return mat.width() * mat.height() * bytesPerPixel;
+    }
+    
+    /**
+     * Write Mat pixels straight into a PixelWriter, without going through AWT.
+     * <p/>
+     * Single channel Mats are written as they are with a gray palette. BGR
+     * Mats are expanded to BGRA in native code first, which is the format
+     * JavaFX stores images in, so the PixelWriter copies them without
+     * converting.
+     * @param mat Mat to be written, 8-bit with 1 or 3 channels
+     * @param converted Mat reused for BGRA conversion
+     * @param buffer Buffer of at least bufferSize(mat) bytes
+     * @param pixelWriter Destination, at least as large as the Mat
+     */
+    public static void writePixels(Mat mat, Mat converted, byte[] buffer, PixelWriter pixelWriter) {
+        int width = mat.width();
+        int height = mat.height();
+        
+        if (mat.channels() > 1) {
+            Imgproc.cvtColor(mat, converted, Imgproc.COLOR_BGR2BGRA);
+            converted.get(0, 0, buffer);
+            pixelWriter.setPixels(0, 0, width, height, PixelFormat.getByteBgraPreInstance(),
+                    buffer, 0, width * 4);
+        } else {
+            mat.get(0, 0, buffer);
+            pixelWriter.setPixels(0, 0, width, height, GRAY_FORMAT, buffer, 0, width);
+        }
+    }
 }
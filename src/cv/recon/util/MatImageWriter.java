@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import javafx.scene.image.WritableImage;
+import org.opencv.core.Mat;
+
+/**
+ * Write Mats into a WritableImage, reusing the image, the pixel buffer and the
+ * conversion Mat from frame to frame.
+ * <p/>
+ * Must be used from the JavaFX application thread when the image is shown.
+ *
+ * @author Burhanuddin
+ */
+public class MatImageWriter {
+    
+    private final Mat converted;
+    private byte[] buffer;
+    private WritableImage writableImage;
+    
+    /**
+     * Construct image writer. Buffers are allocated on first write.
+     */
+    public MatImageWriter() {
+        converted = new Mat();
+    }
+    
+    /**
+     * Write Mat into the image, creating a new image only if the size of the
+     * Mat has changed.
+     * @param mat Mat to be written, 8-bit with 1 or 3 channels
+     * @return Image holding the Mat pixels
+     */
+    public WritableImage write(Mat mat) {
+        int width = mat.width();
+        int height = mat.height();
+        
+        if (writableImage == null
+                || (int) writableImage.getWidth() != width
+                || (int) writableImage.getHeight() != height) {
+            writableImage = new WritableImage(width, height);
+        }
+        
+        int size = MatFXUtils.bufferSize(mat);
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+        }
+        
+        MatFXUtils.writePixels(mat, converted, buffer, writableImage.getPixelWriter());
+        return writableImage;
+    }
+    
+    /**
+     * Release native memory of the conversion Mat.
+     */
+    public void release() {
+        converted.release();
+    }
+}
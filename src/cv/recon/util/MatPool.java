@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Pool of Mats keyed by size and type.
+ * <p/>
+ * Pipeline stages acquire their buffers from the pool and release them back
+ * instead of allocating new Mats, whose native memory is only freed when the
+ * finalizer runs. Once every stage has seen a frame of a given size, acquire
+ * is served from the pool and no native buffer is allocated anymore, which
+ * can be checked with getAllocationCount.
+ * <p/>
+ * Native bytes are accounted per Mat the pool owns. A Mat the pool did not
+ * hand out is adopted on release and counted from then on, and a Mat that
+ * OpenCV reallocated to another size while it was out is recounted at its
+ * new size. At most MAX_IDLE Mats of each size and type are kept idle, so
+ * the pool shrinks back after a burst; further Mats are freed on release.
+ * Owned Mats are only weakly referenced, so a Mat that is never released is
+ * still finalized as before.
+ *
+ * @author Burhanuddin
+ */
+public class MatPool {
+    
+    public static final int MAX_IDLE = 8;
+    
+    private static final MatPool shared = new MatPool();
+    
+    private final ArrayList<Bucket> buckets;
+    private final WeakHashMap<Mat, Bucket> owned;
+    private long allocationCount;
+    private long allocatedBytes;
+    private long freedBytes;
+    private long peakBytes;
+    private long acquireCount;
+    
+    /**
+     * Construct an empty pool.
+     */
+    public MatPool() {
+        buckets = new ArrayList<>();
+        owned = new WeakHashMap<>();
+    }
+    
+    /**
+     * Return the pool shared by all pipeline stages.
+     * @return Shared pool
+     */
+    public static MatPool getShared() {
+        return shared;
+    }
+    
+    /**
+     * Acquire a Mat of the given size and type. Content of the Mat is
+     * undefined.
+     * @param rows Number of rows
+     * @param cols Number of columns
+     * @param type Mat type, e.g. CvType.CV_8UC3
+     * @return Mat owned by the caller until released
+     */
+    public synchronized Mat acquire(int rows, int cols, int type) {
+        acquireCount++;
+        
+        Bucket bucket = find(rows, cols, type);
+        if (bucket != null && !bucket.mats.isEmpty()) {
+            return bucket.mats.pop();
+        }
+        
+        if (bucket == null) {
+            bucket = new Bucket(rows, cols, type);
+            buckets.add(bucket);
+        }
+        allocationCount++;
+        Mat mat = new Mat(rows, cols, type);
+        count(mat, bucket);
+        return mat;
+    }
+    
+    /**
+     * Acquire a Mat with the same size and type as another Mat.
+     * @param like Mat to take size and type from
+     * @return Mat owned by the caller until released
+     */
+    public Mat acquire(Mat like) {
+        return acquire(like.rows(), like.cols(), like.type());
+    }
+    
+    /**
+     * Give a Mat back to the pool. The caller must not use it afterwards.
+     * Empty Mats are ignored, and Mats beyond MAX_IDLE of their size and type
+     * are freed.
+     * @param mat Mat to be released, may be null
+     */
+    public synchronized void release(Mat mat) {
+        if (mat == null || mat.empty()) {
+            return;
+        }
+        
+        Bucket bucket = find(mat.rows(), mat.cols(), mat.type());
+        if (bucket == null) {
+            bucket = new Bucket(mat.rows(), mat.cols(), mat.type());
+            buckets.add(bucket);
+        }
+        
+        Bucket counted = owned.get(mat);
+        if (counted != bucket) {
+            // adopted, or reallocated by OpenCV while it was out
+            if (counted != null) {
+                freedBytes += counted.bytes;
+            }
+            count(mat, bucket);
+        }
+        
+        if (bucket.mats.size() < MAX_IDLE) {
+            bucket.mats.push(mat);
+        } else {
+            free(mat, bucket);
+        }
+    }
+    
+    /**
+     * Account a Mat as owned by the pool with the size of a bucket.
+     */
+    private void count(Mat mat, Bucket bucket) {
+        owned.put(mat, bucket);
+        allocatedBytes += bucket.bytes;
+        peakBytes = java.lang.Math.max(peakBytes, allocatedBytes - freedBytes);
+    }
+    
+    /**
+     * Free native memory of an owned Mat.
+     */
+    private void free(Mat mat, Bucket bucket) {
+        owned.remove(mat);
+        freedBytes += bucket.bytes;
+        mat.release();
+    }
+    
+    /**
+     * Find bucket for the given key without allocating.
+     */
+    private Bucket find(int rows, int cols, int type) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.rows == rows && bucket.cols == cols && bucket.type == type) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Return number of native buffers allocated by the pool. Stays constant in
+     * steady state.
+     * @return Allocation count
+     */
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+    
+    /**
+     * Return total size of native buffers allocated or adopted by the pool.
+     * @return Allocated bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+    
+    /**
+     * Return size of native buffers owned by the pool and not freed, whether
+     * in use or idle in the pool.
+     * @return Native bytes
+     */
+    public synchronized long getNativeBytes() {
+        return allocatedBytes - freedBytes;
+    }
+    
+    /**
+     * Return highest value getNativeBytes has reached.
+     * @return Peak native bytes
+     */
+    public synchronized long getPeakNativeBytes() {
+        return peakBytes;
+    }
+    
+    /**
+     * Return number of acquire calls, served from the pool or not.
+     * @return Acquire count
+     */
+    public synchronized long getAcquireCount() {
+        return acquireCount;
+    }
+    
+    /**
+     * Free native memory of every Mat held by the pool.
+     */
+    public synchronized void clear() {
+        for (Bucket bucket : buckets) {
+            for (Mat mat : bucket.mats) {
+                free(mat, bucket);
+            }
+            bucket.mats.clear();
+        }
+    }
+    
+    private static class Bucket {
+        final int rows;
+        final int cols;
+        final int type;
+        final long bytes;
+        final ArrayDeque<Mat> mats;
+        
+        Bucket(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+            bytes = (long) rows * cols * CvType.ELEM_SIZE(type);
+            mats = new ArrayDeque<>();
+        }
+    }
+}
@@ -34,9 +34,9 @@ public class Math {
     public static double mean(ObservableList<XYChart.Data<Number, Number>> list) {
         double sum = 0;
         
-        sum = list.stream()
-                .map((data) -> data.getYValue().doubleValue())
-                .reduce(sum, (accumulator, _item) -> accumulator + _item);
+        for (int i = 0; i < list.size(); i++) {
+            sum += list.get(i).getYValue().doubleValue();
+        }
         
         return sum / list.size();
     }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Core;
+
+/**
+ * Load the OpenCV native library without changing java.library.path at run
+ * time.
+ * <p/>
+ * The library is looked for on java.library.path first, then in the lib
+ * folder next to the JAR, and last as a resource bundled in the JAR under
+ * native/. A bundled library is extracted once into a cache folder named
+ * after the library, which carries the OpenCV version. It is written under
+ * a temporary name and moved into place, so later starts find a complete
+ * file and load it with System.load straight away.
+ *
+ * @author Burhanuddin
+ */
+public class NativeLoader {
+    
+    /**
+     * System property giving the folder to extract bundled libraries into.
+     * Defaults to .cv-recon/native in the home folder.
+     */
+    public static final String CACHE_PROPERTY = "cv.recon.native.cache";
+    
+    private static final String RESOURCE_DIR = "/native/";
+    
+    private static boolean loaded;
+    private static CompletableFuture<Void> loading;
+    
+    /**
+     * Load the OpenCV library if it is not loaded yet.
+     * @throws UnsatisfiedLinkError If the library is found nowhere or cannot
+     * be loaded
+     */
+    public static synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        
+        long start = System.nanoTime();
+        String name = Core.NATIVE_LIBRARY_NAME;
+        String from;
+        try {
+            System.loadLibrary(name);
+            from = "java.library.path";
+        } catch (UnsatisfiedLinkError ex) {
+            String fileName = System.mapLibraryName(name);
+            Path file = findBesideCode(fileName);
+            if (file == null) {
+                file = extract(fileName);
+            }
+            if (file == null) {
+                throw new UnsatisfiedLinkError(name + " is not on java.library.path, in lib or bundled");
+            }
+            System.load(file.toString());
+            from = file.toString();
+        }
+        loaded = true;
+        
+        Logger.getLogger(NativeLoader.class.getName()).log(Level.INFO, "Loaded {0} from {1} in {2} ms",
+                new Object[] {name, from, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+    }
+    
+    /**
+     * Load the OpenCV library on a background thread. Every call returns the
+     * same future, so work needing the library can be chained on it from
+     * anywhere.
+     * @return Future completing once the library is loaded, exceptionally if
+     * it cannot be
+     */
+    public static synchronized CompletableFuture<Void> loadAsync() {
+        if (loading == null) {
+            loading = CompletableFuture.runAsync(NativeLoader::load);
+        }
+        return loading;
+    }
+    
+    /**
+     * Look for the library in the lib folder next to the JAR, or next to the
+     * classes folder.
+     * @param fileName Platform file name of the library
+     * @return Library file, null if there is none
+     */
+    private static Path findBesideCode(String fileName) {
+        try {
+            URL location = NativeLoader.class.getProtectionDomain().getCodeSource().getLocation();
+            Path code = Paths.get(location.toURI());
+            Path dir = Files.isDirectory(code) ? code : code.getParent();
+            if (dir == null) {
+                return null;
+            }
+            
+            Path file = dir.resolve("lib").resolve(fileName);
+            return Files.isRegularFile(file) ? file : null;
+        } catch (URISyntaxException | SecurityException | IllegalArgumentException ex) {
+            Logger.getLogger(NativeLoader.class.getName()).log(Level.WARNING, null, ex);
+            return null;
+        }
+    }
+    
+    /**
+     * Extract the bundled library into the cache folder, unless an earlier
+     * start already did.
+     * @param fileName Platform file name of the library
+     * @return Extracted library file, null if none is bundled or it cannot
+     * be extracted
+     */
+    private static Path extract(String fileName) {
+        URL resource = NativeLoader.class.getResource(RESOURCE_DIR + fileName);
+        if (resource == null) {
+            return null;
+        }
+        
+        String cache = System.getProperty(CACHE_PROPERTY,
+                Paths.get(System.getProperty("user.home"), ".cv-recon", "native").toString());
+        Path dir = Paths.get(cache, Core.NATIVE_LIBRARY_NAME);
+        Path file = dir.resolve(fileName);
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+        
+        try {
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, fileName, ".tmp");
+            try (InputStream in = resource.openStream()) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                Files.deleteIfExists(temp);
+                if (!Files.isRegularFile(file)) {
+                    throw ex;
+                }
+            }
+            return file;
+        } catch (IOException ex) {
+            Logger.getLogger(NativeLoader.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Erode, dilate and open a mask in horizontal strips on a ForkJoinPool.
+ * <p/>
+ * Each strip reads its rows plus a halo of rows above and below, large enough
+ * for both operations of an open, so its own rows come out exactly as from
+ * the sequential path. The strip is eroded and dilated while it is still in
+ * cache, without an intermediate pass over the whole mask, into a buffer of
+ * its own. Once every strip is done, the strips copy their rows into the
+ * destination, so source and destination may be the same Mat. Halos are read
+ * through submats of the source, which gives the same border handling as the
+ * sequential path, also when the source is itself a submat.
+ * <p/>
+ * Strip buffers and submat headers are kept between calls, and tasks are
+ * reused, so a call does not allocate once the mask size is stable. A mask
+ * too small to split is processed on the calling thread.
+ *
+ * @author Burhanuddin
+ */
+public class ParallelMorphology {
+    
+    public static final int MIN_STRIP_ROWS = 32;
+    
+    private static final int ERODE = 1;
+    private static final int DILATE = 2;
+    private static final int OPEN = ERODE | DILATE;
+    
+    private final ForkJoinPool pool;
+    private final Root root;
+    private Strip[] strips;
+    private Mat boundSrc;
+    private Mat boundDst;
+    private long boundSrcAddress;
+    private long boundDstAddress;
+    private int boundRows;
+    private int boundCols;
+    private int boundKernelRows;
+    private Mat kernel;
+    private int operation;
+    
+    /**
+     * Construct parallel morphology on the common pool.
+     */
+    public ParallelMorphology() {
+        this(ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Construct parallel morphology.
+     * @param pool Pool to run strips on, one strip per worker
+     */
+    public ParallelMorphology(ForkJoinPool pool) {
+        this.pool = pool;
+        root = new Root();
+        strips = new Strip[0];
+    }
+    
+    /**
+     * Erode a mask.
+     * @param src Source mask
+     * @param dst Destination mask, may be the source
+     * @param kernel Structuring element
+     */
+    public void erode(Mat src, Mat dst, Mat kernel) {
+        run(src, dst, kernel, ERODE);
+    }
+    
+    /**
+     * Dilate a mask.
+     * @param src Source mask
+     * @param dst Destination mask, may be the source
+     * @param kernel Structuring element
+     */
+    public void dilate(Mat src, Mat dst, Mat kernel) {
+        run(src, dst, kernel, DILATE);
+    }
+    
+    /**
+     * Erode and then dilate a mask in one pass per strip, the same as calling
+     * Imgproc.erode and then Imgproc.dilate with the same kernel.
+     * @param src Source mask
+     * @param dst Destination mask, may be the source
+     * @param kernel Structuring element
+     */
+    public void open(Mat src, Mat dst, Mat kernel) {
+        run(src, dst, kernel, OPEN);
+    }
+    
+    private void run(Mat src, Mat dst, Mat kernel, int operation) {
+        int count = java.lang.Math.min(pool.getParallelism(), src.rows() / MIN_STRIP_ROWS);
+        if (count < 2) {
+            sequential(src, dst, kernel, operation);
+            return;
+        }
+        
+        dst.create(src.rows(), src.cols(), src.type());
+        bind(src, dst, kernel, count);
+        
+        this.kernel = kernel;
+        this.operation = operation;
+        root.reinitialize();
+        pool.invoke(root);
+        this.kernel = null;
+    }
+    
+    private static void sequential(Mat src, Mat dst, Mat kernel, int operation) {
+        if (operation == DILATE) {
+            Imgproc.dilate(src, dst, kernel);
+            return;
+        }
+        Imgproc.erode(src, dst, kernel);
+        if (operation == OPEN) {
+            Imgproc.dilate(dst, dst, kernel);
+        }
+    }
+    
+    /**
+     * Split source and destination into strips, unless they are already
+     * split the same way.
+     */
+    private void bind(Mat src, Mat dst, Mat kernel, int count) {
+        if (strips.length == count
+                && boundSrc == src && boundSrcAddress == src.dataAddr()
+                && boundDst == dst && boundDstAddress == dst.dataAddr()
+                && boundRows == src.rows() && boundCols == src.cols()
+                && boundKernelRows == kernel.rows()) {
+            return;
+        }
+        
+        for (Strip strip : strips) {
+            strip.release();
+        }
+        
+        int rows = src.rows();
+        // reach of one operation is at most the kernel height, an open needs two
+        int halo = 2 * kernel.rows();
+        strips = new Strip[count];
+        for (int i = 0; i < count; i++) {
+            int start = (int) ((long) rows * i / count);
+            int end = (int) ((long) rows * (i + 1) / count);
+            strips[i] = new Strip(src, dst, start, end, java.lang.Math.max(0, start - halo),
+                    java.lang.Math.min(rows, end + halo));
+        }
+        
+        boundSrc = src;
+        boundDst = dst;
+        boundSrcAddress = src.dataAddr();
+        boundDstAddress = dst.dataAddr();
+        boundRows = rows;
+        boundCols = src.cols();
+        boundKernelRows = kernel.rows();
+    }
+    
+    /**
+     * Release strip buffers and headers.
+     */
+    public void release() {
+        for (Strip strip : strips) {
+            strip.release();
+        }
+        strips = new Strip[0];
+        boundSrc = null;
+        boundDst = null;
+    }
+    
+    /**
+     * Runs every strip, then lets every strip copy its rows out.
+     */
+    private class Root extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected void compute() {
+            for (Strip strip : strips) {
+                strip.copying = false;
+                strip.reinitialize();
+            }
+            invokeAll(strips);
+            
+            for (Strip strip : strips) {
+                strip.copying = true;
+                strip.reinitialize();
+            }
+            invokeAll(strips);
+        }
+    }
+    
+    /**
+     * Rows [start, end) of the destination, computed from rows
+     * [haloStart, haloEnd) of the source.
+     */
+    private class Strip extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final Mat src;
+        private final Mat buffer;
+        private final Mat result;
+        private final Mat resultRows;
+        private final Mat dstRows;
+        private boolean copying;
+        
+        Strip(Mat parentSrc, Mat parentDst, int start, int end, int haloStart, int haloEnd) {
+            src = parentSrc.rowRange(haloStart, haloEnd);
+            buffer = new Mat(haloEnd - haloStart, parentSrc.cols(), parentSrc.type());
+            result = new Mat(haloEnd - haloStart, parentSrc.cols(), parentSrc.type());
+            resultRows = result.rowRange(start - haloStart, end - haloStart);
+            dstRows = parentDst.rowRange(start, end);
+        }
+        
+        @Override
+        protected void compute() {
+            if (copying) {
+                resultRows.copyTo(dstRows);
+                return;
+            }
+            
+            if (operation == DILATE) {
+                Imgproc.dilate(src, result, kernel);
+            } else if (operation == ERODE) {
+                Imgproc.erode(src, result, kernel);
+            } else {
+                Imgproc.erode(src, buffer, kernel);
+                Imgproc.dilate(buffer, result, kernel);
+            }
+        }
+        
+        void release() {
+            src.release();
+            buffer.release();
+            resultRows.release();
+            result.release();
+            dstRows.release();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+/**
+ * Pixel kernels working on frame bytes already copied into Java arrays, as
+ * done with Mat.get for rendering and mask analysis.
+ * <p/>
+ * They stand in for Core.countNonZero, Mat.copyTo with a mask and
+ * Imgproc.cvtColor with COLOR_RGB2GRAY followed by Imgproc.threshold when
+ * the pixels are on the Java side anyway, saving a JNI call and a pass over
+ * the frame. Loops are branch free, with a single index and no calls, so
+ * the JIT can unroll and vectorize them. They depend on nothing native and
+ * still work when the OpenCV library failed to load.
+ * <p/>
+ * Masks are expected to be binary, 0 or 255, as written by the background
+ * models and threshold.
+ *
+ * @author Burhanuddin
+ */
+public class PixelKernels {
+    
+    /**
+     * Fixed point weights of red, green and blue in gray, the ones used by
+     * OpenCV, so results match Imgproc.cvtColor exactly.
+     */
+    private static final int RED_WEIGHT = 4899;
+    private static final int GREEN_WEIGHT = 9617;
+    private static final int BLUE_WEIGHT = 1868;
+    private static final int GRAY_SHIFT = 14;
+    private static final int GRAY_ROUND = 1 << (GRAY_SHIFT - 1);
+    
+    /**
+     * Count non-zero bytes, like Core.countNonZero.
+     * @param pixels Single channel pixels
+     * @param offset First pixel
+     * @param length Number of pixels
+     * @return Number of non-zero pixels
+     */
+    public static int countNonZero(byte[] pixels, int offset, int length) {
+        int count = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int value = pixels[i];
+            count += (value | -value) >>> 31;
+        }
+        return count;
+    }
+    
+    /**
+     * Copy pixels where the mask is set, like Mat.copyTo with a mask. Pixels of
+     * the destination outside the mask are left as they are.
+     * @param src Source pixels
+     * @param mask Binary mask, one byte per pixel
+     * @param dst Destination pixels, same layout as source
+     * @param pixels Number of pixels
+     * @param channels Bytes per pixel of source and destination, 1 or 3
+     */
+    public static void copyMasked(byte[] src, byte[] mask, byte[] dst, int pixels, int channels) {
+        if (channels == 1) {
+            for (int i = 0; i < pixels; i++) {
+                int m = mask[i];
+                dst[i] = (byte) ((src[i] & m) | (dst[i] & ~m));
+            }
+        } else {
+            for (int p = 0, i = 0; p < pixels; p++, i += 3) {
+                int m = mask[p];
+                dst[i] = (byte) ((src[i] & m) | (dst[i] & ~m));
+                dst[i + 1] = (byte) ((src[i + 1] & m) | (dst[i + 1] & ~m));
+                dst[i + 2] = (byte) ((src[i + 2] & m) | (dst[i + 2] & ~m));
+            }
+        }
+    }
+    
+    /**
+     * Convert three channel pixels to gray, like Imgproc.cvtColor with
+     * COLOR_RGB2GRAY. The first channel is weighted as red.
+     * @param src Three channel pixels
+     * @param gray Single channel destination
+     * @param pixels Number of pixels
+     */
+    public static void rgbToGray(byte[] src, byte[] gray, int pixels) {
+        for (int p = 0, i = 0; p < pixels; p++, i += 3) {
+            gray[p] = (byte) gray(src, i);
+        }
+    }
+    
+    /**
+     * Threshold single channel pixels, like Imgproc.threshold with
+     * THRESH_BINARY and a maximum of 255.
+     * @param src Single channel pixels
+     * @param dst Binary destination, may be the source
+     * @param length Number of pixels
+     * @param threshold Pixels above it are set, 0 to 255
+     */
+    public static void threshold(byte[] src, byte[] dst, int length, int threshold) {
+        for (int i = 0; i < length; i++) {
+            dst[i] = (byte) ((threshold - (src[i] & 0xFF)) >> 31);
+        }
+    }
+    
+    /**
+     * Convert three channel pixels to gray and threshold them in one pass,
+     * without an intermediate gray image.
+     * @param src Three channel pixels
+     * @param mask Binary destination, one byte per pixel
+     * @param pixels Number of pixels
+     * @param threshold Pixels whose gray is above it are set, 0 to 255
+     */
+    public static void rgbToGrayThreshold(byte[] src, byte[] mask, int pixels, int threshold) {
+        for (int p = 0, i = 0; p < pixels; p++, i += 3) {
+            mask[p] = (byte) ((threshold - gray(src, i)) >> 31);
+        }
+    }
+    
+    /**
+     * @param src Three channel pixels
+     * @param i Index of the first channel of a pixel
+     * @return Gray level of the pixel, 0 to 255
+     */
+    private static int gray(byte[] src, int i) {
+        return ((src[i] & 0xFF) * RED_WEIGHT
+                + (src[i + 1] & 0xFF) * GREEN_WEIGHT
+                + (src[i + 2] & 0xFF) * BLUE_WEIGHT
+                + GRAY_ROUND) >> GRAY_SHIFT;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.util.Arrays;
+
+/**
+ * Combine overlapping rectangles into their bounding rectangle until no two
+ * rectangles overlap. Rectangles that only touch at an edge count as
+ * overlapping.
+ * <p/>
+ * Each pass sorts the rectangles by left edge and sweeps over them, keeping
+ * the rectangles whose right edge has not been passed yet in a segment tree
+ * ordered by top edge, which holds the largest bottom edge of each subtree.
+ * Every rectangle queries only the active rectangles that overlap it
+ * vertically, so a pass costs O((n + m) log n) for m overlapping pairs,
+ * however the rectangles are laid out. Overlapping pairs are joined with
+ * union-find, and every group is replaced by its bounding rectangle. Another
+ * pass only runs if merged rectangles have grown into each other. Working
+ * arrays are kept between calls.
+ *
+ * @author Burhanuddin
+ */
+public class RectangleMerger {
+    
+    private static final int EMPTY = Integer.MIN_VALUE;
+    
+    private long[] keys;
+    private long[] ends;
+    private long[] tops;
+    private int[] sortedTops;
+    private int[] rank;
+    private int[] byRank;
+    private int[] tree;
+    private int leafCount;
+    private int[] parent;
+    private int[] left;
+    private int[] top;
+    private int[] right;
+    private int[] bottom;
+    
+    /**
+     * Construct rectangle merger.
+     */
+    public RectangleMerger() {
+        ensureCapacity(16);
+    }
+    
+    /**
+     * Merge overlapping rectangles in place.
+     * @param regions Rectangles to be merged
+     */
+    public void merge(RegionSet regions) {
+        int size;
+        do {
+            size = regions.size();
+            mergePass(regions);
+        } while (regions.size() < size && regions.size() > 1);
+    }
+    
+    /**
+     * Sort and sweep once, replacing every group of overlapping rectangles
+     * with its bounding rectangle.
+     */
+    private void mergePass(RegionSet regions) {
+        int n = regions.size();
+        ensureCapacity(n);
+        
+        for (int i = 0; i < n; i++) {
+            int x = regions.getX(i);
+            int y = regions.getY(i);
+            keys[i] = ((long) x << 32) | i;
+            ends[i] = ((long) (x + regions.getWidth(i)) << 32) | i;
+            tops[i] = ((long) y << 32) | i;
+            parent[i] = i;
+        }
+        Arrays.sort(keys, 0, n);
+        Arrays.sort(ends, 0, n);
+        Arrays.sort(tops, 0, n);
+        for (int r = 0; r < n; r++) {
+            int i = (int) tops[r];
+            rank[i] = r;
+            byRank[r] = i;
+            sortedTops[r] = (int) (tops[r] >> 32);
+        }
+        
+        leafCount = Integer.highestOneBit(java.lang.Math.max(1, n - 1)) << 1;
+        Arrays.fill(tree, 1, 2 * leafCount, EMPTY);
+        
+        int passed = 0;
+        for (int k = 0; k < n; k++) {
+            int i = (int) keys[k];
+            int x = regions.getX(i);
+            
+            // right edge before this left edge, cannot overlap anything after i
+            while (passed < n && (int) (ends[passed] >> 32) < x) {
+                set(rank[(int) ends[passed]], EMPTY);
+                passed++;
+            }
+            
+            int y0 = regions.getY(i);
+            int y1 = y0 + regions.getHeight(i);
+            int limit = countTopsUpTo(y1, n);
+            if (limit > 0) {
+                unionOverlapping(1, 0, leafCount, limit, y0, i);
+            }
+            set(rank[i], y1);
+        }
+        
+        for (int i = 0; i < n; i++) {
+            int root = find(i);
+            int x0 = regions.getX(i);
+            int y0 = regions.getY(i);
+            int x1 = x0 + regions.getWidth(i);
+            int y1 = y0 + regions.getHeight(i);
+            
+            if (root == i) {
+                left[i] = x0;
+                top[i] = y0;
+                right[i] = x1;
+                bottom[i] = y1;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int root = find(i);
+            if (root != i) {
+                left[root] = java.lang.Math.min(left[root], regions.getX(i));
+                top[root] = java.lang.Math.min(top[root], regions.getY(i));
+                right[root] = java.lang.Math.max(right[root], regions.getX(i) + regions.getWidth(i));
+                bottom[root] = java.lang.Math.max(bottom[root], regions.getY(i) + regions.getHeight(i));
+            }
+        }
+        
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (parent[i] == i) {
+                regions.set(count++, left[i], top[i], right[i] - left[i], bottom[i] - top[i]);
+            }
+        }
+        regions.truncate(count);
+    }
+    
+    /**
+     * Count rectangles whose top edge is at or above a line, by binary search.
+     */
+    private int countTopsUpTo(int y, int n) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedTops[mid] <= y) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Set bottom edge of the rectangle of a rank in the segment tree, EMPTY
+     * if it is not active.
+     */
+    private void set(int leaf, int value) {
+        int node = leafCount + leaf;
+        tree[node] = value;
+        for (node >>= 1; node > 0; node >>= 1) {
+            tree[node] = java.lang.Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+    
+    /**
+     * Join a rectangle with every active rectangle that overlaps it
+     * vertically: among ranks [0, limit), whose top edge is not below its
+     * bottom edge, those whose bottom edge is not above its top edge y0.
+     * Subtrees whose largest bottom edge is above y0 are skipped.
+     */
+    private void unionOverlapping(int node, int from, int to, int limit, int y0, int i) {
+        if (from >= limit || tree[node] < y0) {
+            return;
+        }
+        if (node >= leafCount) {
+            union(i, byRank[from]);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        unionOverlapping(2 * node, from, mid, limit, y0, i);
+        unionOverlapping(2 * node + 1, mid, to, limit, y0, i);
+    }
+    
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+    
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA != rootB) {
+            // keep the lower index as root so output keeps input order
+            if (rootA < rootB) {
+                parent[rootB] = rootA;
+            } else {
+                parent[rootA] = rootB;
+            }
+        }
+    }
+    
+    private void ensureCapacity(int n) {
+        if (keys != null && keys.length >= n) {
+            return;
+        }
+        
+        keys = new long[n];
+        ends = new long[n];
+        tops = new long[n];
+        sortedTops = new int[n];
+        rank = new int[n];
+        byRank = new int[n];
+        tree = new int[2 * (Integer.highestOneBit(java.lang.Math.max(1, n - 1)) << 1)];
+        parent = new int[n];
+        left = new int[n];
+        top = new int[n];
+        right = new int[n];
+        bottom = new int[n];
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.util.Arrays;
+
+/**
+ * Rectangles kept in primitive arrays, reused from frame to frame.
+ *
+ * @author Burhanuddin
+ */
+public class RegionSet {
+    
+    private int[] x;
+    private int[] y;
+    private int[] width;
+    private int[] height;
+    private int size;
+    
+    /**
+     * Construct empty region set.
+     */
+    public RegionSet() {
+        this(16);
+    }
+    
+    /**
+     * Construct empty region set.
+     * @param capacity Initial capacity
+     */
+    public RegionSet(int capacity) {
+        x = new int[capacity];
+        y = new int[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+    }
+    
+    /**
+     * Remove every rectangle.
+     */
+    public void clear() {
+        size = 0;
+    }
+    
+    /**
+     * Append a rectangle, growing the arrays if needed.
+     * @param x Left
+     * @param y Top
+     * @param width Width
+     * @param height Height
+     */
+    public void add(int x, int y, int width, int height) {
+        if (size == this.x.length) {
+            int capacity = size * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.width = Arrays.copyOf(this.width, capacity);
+            this.height = Arrays.copyOf(this.height, capacity);
+        }
+        set(size++, x, y, width, height);
+    }
+    
+    /**
+     * Overwrite rectangle at an index.
+     */
+    void set(int i, int x, int y, int width, int height) {
+        this.x[i] = x;
+        this.y[i] = y;
+        this.width[i] = width;
+        this.height[i] = height;
+    }
+    
+    /**
+     * Drop rectangles past a new size.
+     */
+    void truncate(int size) {
+        this.size = size;
+    }
+    
+    /**
+     * Copy every rectangle of another set into this one.
+     * @param other Set to copy from
+     */
+    public void copyFrom(RegionSet other) {
+        clear();
+        for (int i = 0; i < other.size; i++) {
+            add(other.x[i], other.y[i], other.width[i], other.height[i]);
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int getX(int i) {
+        return x[i];
+    }
+    
+    public int getY(int i) {
+        return y[i];
+    }
+    
+    public int getWidth(int i) {
+        return width[i];
+    }
+    
+    public int getHeight(int i) {
+        return height[i];
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import java.util.Arrays;
+
+/**
+ * Statistics over a sliding window of the most recent samples, kept on
+ * primitive arrays.
+ * <p/>
+ * Adding a sample costs O(1) amortized for min and max (monotonic deques) and
+ * O(1) for mean and variance (Welford's update with removal). Percentiles are
+ * answered in O(1) from a sorted copy of the window that is kept up to date
+ * with a binary search and a block move per sample. Nothing is allocated
+ * after construction.
+ *
+ * @author Burhanuddin
+ */
+public class SlidingWindowStatistics {
+    
+    private final int capacity;
+    private final double[] values;
+    private final long[] timestamps;
+    private final double[] sorted;
+    private final long[] minDeque;
+    private final long[] maxDeque;
+    private int minHead;
+    private int minSize;
+    private int maxHead;
+    private int maxSize;
+    private long next;
+    private int size;
+    private double mean;
+    private double m2;
+    
+    /**
+     * Construct statistics over a window.
+     * @param capacity Number of most recent samples in the window
+     */
+    public SlidingWindowStatistics(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        
+        this.capacity = capacity;
+        values = new double[capacity];
+        timestamps = new long[capacity];
+        sorted = new double[capacity];
+        minDeque = new long[capacity];
+        maxDeque = new long[capacity];
+    }
+    
+    /**
+     * Remove every sample.
+     */
+    public void clear() {
+        minHead = minSize = 0;
+        maxHead = maxSize = 0;
+        next = 0;
+        size = 0;
+        mean = 0;
+        m2 = 0;
+    }
+    
+    /**
+     * Add a sample without timestamp.
+     * @param value Sample value
+     */
+    public void add(double value) {
+        add(0, value);
+    }
+    
+    /**
+     * Add a sample, evicting the oldest one if the window is full.
+     * @param timestamp Timestamp of the sample
+     * @param value Sample value
+     */
+    public void add(long timestamp, double value) {
+        long sequence = next++;
+        int index = (int) (sequence % capacity);
+        
+        // evict from deques before the slot is overwritten
+        long expired = sequence - capacity;
+        if (minSize > 0 && minDeque[minHead] <= expired) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        if (maxSize > 0 && maxDeque[maxHead] <= expired) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        
+        if (size == capacity) {
+            double old = values[index];
+            double newMean = mean + (value - old) / size;
+            m2 += (value - old) * (value - newMean + old - mean);
+            mean = newMean;
+            replaceSorted(old, value);
+        } else {
+            size++;
+            double delta = value - mean;
+            mean += delta / size;
+            m2 += delta * (value - mean);
+            insertSorted(value);
+        }
+        
+        values[index] = value;
+        timestamps[index] = timestamp;
+        
+        while (minSize > 0 && values[(int) (minDeque[(minHead + minSize - 1) % capacity] % capacity)] >= value) {
+            minSize--;
+        }
+        minDeque[(minHead + minSize) % capacity] = sequence;
+        minSize++;
+        
+        while (maxSize > 0 && values[(int) (maxDeque[(maxHead + maxSize - 1) % capacity] % capacity)] <= value) {
+            maxSize--;
+        }
+        maxDeque[(maxHead + maxSize) % capacity] = sequence;
+        maxSize++;
+    }
+    
+    /**
+     * Insert value into sorted copy while the window is filling up.
+     */
+    private void insertSorted(double value) {
+        int position = insertionPoint(value, size - 1);
+        System.arraycopy(sorted, position, sorted, position + 1, size - 1 - position);
+        sorted[position] = value;
+    }
+    
+    /**
+     * Replace the evicted value with the new one in sorted copy, moving only
+     * the elements between their positions.
+     */
+    private void replaceSorted(double old, double value) {
+        if (value == old) {
+            return;
+        }
+        
+        int from = Arrays.binarySearch(sorted, 0, size, old);
+        
+        if (value > old) {
+            int to = insertionPoint(value, size) - 1;
+            System.arraycopy(sorted, from + 1, sorted, from, to - from);
+            sorted[to] = value;
+        } else {
+            int to = insertionPoint(value, size);
+            System.arraycopy(sorted, to, sorted, to + 1, from - to);
+            sorted[to] = value;
+        }
+    }
+    
+    /**
+     * Return index of the first element greater than value.
+     */
+    private int insertionPoint(double value, int length) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Return number of samples in the window.
+     * @return Window size, at most the capacity
+     */
+    public int size() {
+        return size;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Return sample at a position in the window.
+     * @param i Position, 0 for oldest and size() - 1 for latest
+     * @return Sample value
+     */
+    public double get(int i) {
+        return values[(int) ((next - size + i) % capacity)];
+    }
+    
+    /**
+     * Return timestamp of sample at a position in the window.
+     * @param i Position, 0 for oldest and size() - 1 for latest
+     * @return Timestamp
+     */
+    public long getTimestamp(int i) {
+        return timestamps[(int) ((next - size + i) % capacity)];
+    }
+    
+    /**
+     * @return Latest sample value, 0 if empty
+     */
+    public double getLast() {
+        return size == 0 ? 0.0 : get(size - 1);
+    }
+    
+    /**
+     * @return Minimum value in the window, 0 if empty
+     */
+    public double getMin() {
+        return minSize == 0 ? 0.0 : values[(int) (minDeque[minHead] % capacity)];
+    }
+    
+    /**
+     * @return Maximum value in the window, 0 if empty
+     */
+    public double getMax() {
+        return maxSize == 0 ? 0.0 : values[(int) (maxDeque[maxHead] % capacity)];
+    }
+    
+    /**
+     * @return Mid range value of the window, 0 if empty
+     */
+    public double getMidRange() {
+        return (getMax() + getMin()) / 2;
+    }
+    
+    /**
+     * @return Mean value of the window, 0 if empty
+     */
+    public double getMean() {
+        return mean;
+    }
+    
+    /**
+     * @return Population variance of the window, 0 if empty
+     */
+    public double getVariance() {
+        if (size == 0) {
+            return 0.0;
+        }
+        return java.lang.Math.max(0.0, m2 / size);
+    }
+    
+    /**
+     * @return Population standard deviation of the window
+     */
+    public double getStandardDeviation() {
+        return java.lang.Math.sqrt(getVariance());
+    }
+    
+    /**
+     * Return percentile of the window using nearest rank.
+     * @param percentile Percentile between 0 and 100
+     * @return Value at the percentile, 0 if empty
+     */
+    public double getPercentile(double percentile) {
+        if (size == 0) {
+            return 0.0;
+        }
+        
+        int rank = (int) java.lang.Math.ceil(percentile / 100 * size) - 1;
+        if (rank < 0) {
+            rank = 0;
+        } else if (rank >= size) {
+            rank = size - 1;
+        }
+        return sorted[rank];
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Burhanuddin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cv.recon.util;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Submat headers of one rectangle, cached per parent Mat.
+ * <p/>
+ * Mat.submat creates a new native header on every call. Frames cycle through
+ * a fixed set of Mats, so the header for each of them is created once and
+ * reused until the rectangle changes or the parent gets a new buffer.
+ *
+ * @author Burhanuddin
+ */
+public class SubmatCache {
+    
+    private final Mat[] parents;
+    private final long[] addresses;
+    private final Mat[] views;
+    private Rect rect;
+    private int next;
+    
+    /**
+     * Construct submat cache.
+     * @param capacity Number of parent Mats to remember
+     */
+    public SubmatCache(int capacity) {
+        parents = new Mat[capacity];
+        addresses = new long[capacity];
+        views = new Mat[capacity];
+    }
+    
+    /**
+     * Change rectangle, releasing every cached header.
+     * @param rect Rectangle of the submats
+     */
+    public void setRect(Rect rect) {
+        clear();
+        this.rect = rect;
+    }
+    
+    /**
+     * Return submat of a parent Mat.
+     * @param parent Parent Mat
+     * @return Submat sharing pixels with the parent
+     */
+    public Mat get(Mat parent) {
+        long address = parent.dataAddr();
+        for (int i = 0; i < parents.length; i++) {
+            if (parents[i] == parent && addresses[i] == address) {
+                return views[i];
+            }
+        }
+        
+        int slot = next;
+        next = (next + 1) % parents.length;
+        if (views[slot] != null) {
+            views[slot].release();
+        }
+        
+        parents[slot] = parent;
+        addresses[slot] = address;
+        views[slot] = parent.submat(rect);
+        return views[slot];
+    }
+    
+    /**
+     * Release every cached header.
+     */
+    public void clear() {
+        for (int i = 0; i < parents.length; i++) {
+            if (views[i] != null) {
+                views[i].release();
+            }
+            parents[i] = null;
+            views[i] = null;
+        }
+        next = 0;
+    }
+}